@@ -0,0 +1,126 @@
+package benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Random;
+
+import dao.BookDaoImpl;
+import dao.Database;
+import dao.OrderDaoImpl;
+import dao.SchemaMigrator;
+import dao.UserDaoImpl;
+
+// Fills an empty database with synthetic users, books, orders and order lines.
+// The data is generated from a fixed seed, so two runs at the same scale see the same database.
+public class BenchmarkSeeder {
+    private static final int BATCH_SIZE = 10_000;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final int users;
+    private final int books;
+    private final int orders;
+    private final int linesPerOrder;
+    private final Random random = new Random(42);
+
+    public BenchmarkSeeder(int users, int books, int orders, int linesPerOrder) {
+        this.users = users;
+        this.books = books;
+        this.orders = orders;
+        this.linesPerOrder = linesPerOrder;
+    }
+
+    public static String username(int index) {
+        return "user" + index;
+    }
+
+    public void seed() throws SQLException {
+        new SchemaMigrator(new UserDaoImpl(), new BookDaoImpl(), new OrderDaoImpl()).migrate();
+
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                seedUsers(connection);
+                seedBooks(connection);
+                seedOrders(connection);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void seedUsers(Connection connection) throws SQLException {
+        String sql = "INSERT INTO users (first_name, last_name, username, password) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < users; i++) {
+                pstmt.setString(1, "First" + i);
+                pstmt.setString(2, "Last" + i);
+                pstmt.setString(3, username(i));
+                pstmt.setString(4, "password");
+                addToBatch(pstmt, i);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedBooks(Connection connection) throws SQLException {
+        String sql = "INSERT INTO books (title, authors, physical_copies, price, sold_copies) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < books; i++) {
+                pstmt.setString(1, "Book " + i);
+                pstmt.setString(2, "Author " + (i % 5000));
+                pstmt.setInt(3, 1 + random.nextInt(1000));
+                pstmt.setDouble(4, 5 + random.nextInt(95));
+                pstmt.setInt(5, random.nextInt(10_000));
+                addToBatch(pstmt, i);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // Orders are spread over the last 90 days; roughly one in ten is still a pending cart
+    private void seedOrders(Connection connection) throws SQLException {
+        String masterSql = "INSERT INTO orders (order_id, username, final_price, status, order_datetime) VALUES (?, ?, ?, ?, ?)";
+        String detailSql = "INSERT INTO orderDetails (order_id, book_id, qty, total_price) VALUES (?, ?, ?, ?)";
+        long now = System.currentTimeMillis();
+        int lines = 0;
+
+        try (PreparedStatement masterStmt = connection.prepareStatement(masterSql);
+             PreparedStatement detailStmt = connection.prepareStatement(detailSql)) {
+            for (int orderId = 1; orderId <= orders; orderId++) {
+                double finalPrice = 0;
+                for (int line = 0; line < linesPerOrder; line++) {
+                    int qty = 1 + random.nextInt(3);
+                    double totalPrice = qty * (5 + random.nextInt(95));
+                    detailStmt.setInt(1, orderId);
+                    detailStmt.setInt(2, 1 + random.nextInt(books));
+                    detailStmt.setInt(3, qty);
+                    detailStmt.setDouble(4, totalPrice);
+                    addToBatch(detailStmt, lines++);
+                    finalPrice += totalPrice;
+                }
+
+                masterStmt.setInt(1, orderId);
+                masterStmt.setString(2, username(random.nextInt(users)));
+                masterStmt.setDouble(3, finalPrice);
+                masterStmt.setString(4, random.nextInt(10) == 0 ? "pending" : "completed");
+                masterStmt.setTimestamp(5, new Timestamp(now - (long) (random.nextDouble() * 90 * DAY_MILLIS)));
+                addToBatch(masterStmt, orderId);
+            }
+            masterStmt.executeBatch();
+            detailStmt.executeBatch();
+        }
+    }
+
+    private static void addToBatch(PreparedStatement pstmt, int count) throws SQLException {
+        pstmt.addBatch();
+        if ((count + 1) % BATCH_SIZE == 0) {
+            pstmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import dao.BookDao;
+import dao.BookDaoImpl;
+import dao.Database;
+import dao.OrderDao;
+import dao.OrderDaoImpl;
+import model.Order;
+import model.OrderDetail;
+
+// Throughput and latency benchmark for the DAO layer against a seeded SQLite file.
+//
+// Usage: java -cp <classes and jars> benchmark.DaoBenchmark [scale]
+// where scale is the number of books and orders, e.g. 1k, 100k or 1m (default 1k).
+// The database is seeded into bench-<scale>.db on first use and reused afterwards.
+// Optional -Dbench.* properties: users, linesPerOrder, warmupSeconds, measureSeconds,
+// writeBurst, include (a regex on operation names) and dir (where the database file lives).
+public class DaoBenchmark {
+    // One timed DAO call
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static class Case {
+        private final String name;
+        private final Operation operation;
+
+        private Case(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String scaleArg = args.length > 0 ? args[0] : "1k";
+        int scale = parseScale(scaleArg);
+        int users = Integer.getInteger("bench.users", Math.max(100, scale / 100));
+        int linesPerOrder = Integer.getInteger("bench.linesPerOrder", 3);
+        int warmupSeconds = Integer.getInteger("bench.warmupSeconds", 5);
+        int measureSeconds = Integer.getInteger("bench.measureSeconds", 10);
+        int writeBurst = Integer.getInteger("bench.writeBurst", 32);
+        String include = System.getProperty("bench.include", ".*");
+
+        // Must be set before the Database class is first used
+        File dbFile = new File(System.getProperty("bench.dir", "."), "bench-" + scaleArg.toLowerCase(Locale.ROOT) + ".db");
+        boolean seeded = dbFile.exists();
+        System.setProperty("db.url", "jdbc:sqlite:" + dbFile.getPath());
+
+        if (!seeded) {
+            System.out.println("Seeding " + dbFile + ": " + users + " users, " + scale + " books, "
+                    + scale + " orders, " + (long) scale * linesPerOrder + " order lines");
+            long start = System.nanoTime();
+            new BenchmarkSeeder(users, scale, scale, linesPerOrder).seed();
+            System.out.printf("Seeded in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        }
+
+        BookDao bookDao = new BookDaoImpl();
+        OrderDao orderDao = new OrderDaoImpl();
+        List<Case> cases = new ArrayList<>();
+        cases.add(new Case("BookDao.getAllBooks", bookDao::getAllBooks));
+        cases.add(new Case("BookDao.getBookById", () -> bookDao.getBookById(1 + random(scale))));
+        cases.add(new Case("BookDao.getTopFiveBooks", bookDao::getTopFiveBooks));
+        cases.add(new Case("OrderDao.getOrdersByUser", () -> orderDao.getOrdersByUser(BenchmarkSeeder.username(random(users)))));
+        cases.add(new Case("OrderDao.getCompletedOrders", () -> orderDao.getCompletedOrders(BenchmarkSeeder.username(random(users)))));
+        cases.add(new Case("OrderDao.loadCompletedOrderLines", () -> orderDao.loadCompletedOrderLines(BenchmarkSeeder.username(random(users)))));
+        cases.add(new Case("OrderDao.createOrder", () -> orderDao.createOrder(newOrder(users, scale, linesPerOrder))));
+        // Orders arriving together, as at peak hour; compare with -Ddb.write.maxBatch=1 for one commit per order
+        cases.add(new Case("Writer.createOrder x" + writeBurst, () -> {
+            List<CompletableFuture<Void>> commits = new ArrayList<>();
+            for (int i = 0; i < writeBurst; i++) {
+                Order order = newOrder(users, scale, linesPerOrder);
+                commits.add(Database.getWriter().submit(() -> {
+                    orderDao.createOrder(order);
+                    return null;
+                }));
+            }
+            CompletableFuture.allOf(commits.toArray(new CompletableFuture[0])).join();
+        }));
+
+        System.out.printf("%-30s %10s %12s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Calls", "Ops/s", "Mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us");
+        for (Case benchmarkCase : cases) {
+            if (benchmarkCase.name.matches(include)) {
+                run(benchmarkCase, warmupSeconds, measureSeconds);
+            }
+        }
+        System.out.println(Database.getPool());
+        System.out.println(Database.getWriter());
+        Database.shutdown();
+    }
+
+    private static void run(Case benchmarkCase, int warmupSeconds, int measureSeconds) throws Exception {
+        long warmupEnd = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            benchmarkCase.operation.run();
+        }
+
+        long[] samples = new long[1024];
+        int count = 0;
+        long start = System.nanoTime();
+        long end = start + measureSeconds * 1_000_000_000L;
+        long now = start;
+        while (now < end) {
+            benchmarkCase.operation.run();
+            long finished = System.nanoTime();
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = finished - now;
+            now = finished;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long sample : sorted) {
+            total += sample;
+        }
+        System.out.printf("%-30s %10d %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                benchmarkCase.name, count, count / ((now - start) / 1e9), total / 1e3 / count,
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                percentile(sorted, 99.9), sorted[count - 1] / 1e3);
+    }
+
+    // Nearest-rank percentile in microseconds
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e3;
+    }
+
+    private static Order newOrder(int users, int books, int linesPerOrder) {
+        List<OrderDetail> details = new ArrayList<>();
+        double finalPrice = 0;
+        for (int line = 0; line < linesPerOrder; line++) {
+            double totalPrice = 10 + random(90);
+            details.add(new OrderDetail(0, 1 + random(books), 1, totalPrice));
+            finalPrice += totalPrice;
+        }
+        return new Order(BenchmarkSeeder.username(random(users)), finalPrice, "pending", null, details);
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    // Accepts plain numbers or k/m suffixes, e.g. 1000, 100k, 1m
+    private static int parseScale(String scale) {
+        String value = scale.trim().toLowerCase(Locale.ROOT);
+        int multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1_000;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            multiplier = 1_000_000;
+            value = value.substring(0, value.length() - 1);
+        }
+        return Integer.parseInt(value) * multiplier;
+    }
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.application.Application;
 import javafx.stage.Stage;
@@ -8,24 +9,52 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.fxml.FXMLLoader;
 
+import model.DataService;
 import model.Model;
+import model.StartupTimer;
 import controller.LoginController;
+import dao.DaoMetrics;
+import dao.Database;
 
 public class Main extends Application {
     private Model model;
+    // Phase timings, written to startup-report.txt once the first screen is up and the caches are warm
+    private final StartupTimer startup = new StartupTimer();
+    private final CompletableFuture<Void> loginShown = new CompletableFuture<>();
+    private CompletableFuture<Void> setup;
 
-    // Initializes the application, setting up the model
+    // Initializes the application: creates the model and starts the database setup in the background,
+    // so the schema check overlaps with loading the login screen
     @Override
     public void init() {
+        StartupTimer.Phase phase = startup.begin("Create model");
         model = new Model();
+        phase.end();
+
+        setup = CompletableFuture.runAsync(() -> {
+            StartupTimer.Phase setupPhase = startup.begin("Schema and seed check");
+            model.setup();
+            setupPhase.end();
+        }, DataService.getExecutor());
+        // DAO calls made before the schema is ready, such as an early login, wait for it
+        DataService.waitFor(setup);
+
+        CompletableFuture<Void> warmUp = setup.thenRunAsync(() -> {
+            StartupTimer.Phase warmUpPhase = startup.begin("Catalog and top sellers warm-up");
+            model.warmUp();
+            warmUpPhase.end();
+        }, DataService.getExecutor());
+        CompletableFuture.allOf(warmUp, loginShown).whenComplete((ignored, e) -> {
+            startup.mark("Startup complete");
+            startup.writeReport();
+        });
     }
 
     // Starts the JavaFX application by setting up the main window
     @Override
     public void start(Stage primaryStage) throws SQLException {
         try {
-            // Setup the model (possibly establishing database connections, etc.)
-            model.setup();
+            StartupTimer.Phase phase = startup.begin("Load login view");
 
             // Load the Login view from FXML file
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/view/LoginView.fxml"));
@@ -39,16 +68,35 @@ public class Main extends Application {
 
             // Display the login stage using the loaded layout
             loginController.showStage(root);
+            phase.end();
+            startup.mark("Login screen shown");
+            loginShown.complete(null);
 
+            // A setup failure replaces the login screen with the error
+            DataService.onFxThread(setup, ignored -> {}, e -> showError(primaryStage, e));
         } catch (IOException | RuntimeException e) {
-            // Display an error message if an exception occurs during setup
-            Scene scene = new Scene(new Label("Error: " + e.getMessage()), 200, 100);
-            primaryStage.setTitle("Error");
-            primaryStage.setScene(scene);
-            primaryStage.show();
+            loginShown.complete(null);
+            showError(primaryStage, e);
         }
     }
 
+    // Display an error message if an exception occurs during setup
+    private void showError(Stage primaryStage, Throwable e) {
+        Scene scene = new Scene(new Label("Error: " + e.getMessage()), 200, 100);
+        primaryStage.setTitle("Error");
+        primaryStage.setScene(scene);
+        primaryStage.show();
+    }
+
+    // Releases pooled database connections and writes the final DAO metrics when the application exits
+    @Override
+    public void stop() {
+        model.getDataService().flushCartsAndWait();
+        DataService.shutdown();
+        Database.shutdown();
+        DaoMetrics.shutdown();
+    }
+
     // Main method to launch the JavaFX application
     public static void main(String[] args) {
         launch(args);
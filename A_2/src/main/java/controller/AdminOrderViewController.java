@@ -1,23 +1,26 @@
 package controller;
 
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import model.Order;
 import model.OrderDetail;
+import model.OrderLineStore;
+import model.OrderExportTask;
 import model.Book;
+import model.DataService;
 import model.User;
-import dao.OrderDaoImpl;
-import dao.BookDaoImpl;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.Map;
 
 public class AdminOrderViewController {
 
@@ -27,49 +30,70 @@ public class AdminOrderViewController {
     private ScrollPane scrollPane;
     @FXML
     private Button exportButton;
+    @FXML
+    private ProgressBar exportProgress;
+    @FXML
+    private Label exportStatus;
 
-    private OrderDaoImpl orderDao;
-    private BookDaoImpl bookDao;
+    private DataService dataService;
+    private Map<Integer, Book> books = Map.of(); // Books referenced by the displayed orders
+    private int loadGeneration; // Bumped by every load, so the results of a superseded one are dropped
 
-    // Initializes the controller, setting up DAOs and loading orders
+    // Initializes the controller
     public void initialize() {
-        orderDao = new OrderDaoImpl();
-        bookDao = new BookDaoImpl();
         scrollPane.setPrefHeight(300);
         scrollPane.setPrefWidth(500);
+    }
+
+    // Sets the service used for background database access and loads the orders
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
+        loadAllOrders();
+    }
+
+    // Reloads the orders when the view is shown again; the orders already shown stay until the new ones replace them
+    public void refresh() {
         loadAllOrders();
     }
 
     // Loads all completed orders and displays them in the ordersContainer
     private void loadAllOrders() {
-        try {
-            // Retrieve all users from the database
-            List<User> users = orderDao.getAllUsers();
-            for (User user : users) {
-                // Get completed orders for each user
-                List<Order> userOrders = orderDao.getCompletedOrders(user.getUsername());
+        // Retrieve all users and, with one query, every completed order line, then all referenced books, in the background
+        CompletableFuture<List<User>> usersFuture = dataService.getCustomers();
+        CompletableFuture<OrderLineStore> ordersFuture = dataService.getCompletedOrderLines(null);
+        CompletableFuture<Map<Integer, Book>> booksFuture = ordersFuture.thenCompose(this::fetchBooks);
+        int generation = ++loadGeneration;
+
+        DataService.onFxThread(CompletableFuture.allOf(usersFuture, booksFuture), ignored -> {
+            if (generation != loadGeneration) {
+                return; // A later load will show newer orders
+            }
+            books = booksFuture.join();
+            OrderLineStore orders = ordersFuture.join();
+            List<Node> userBoxes = new ArrayList<>();
+
+            for (User user : usersFuture.join()) {
+                int firstOrder = orders.getFirstOrder(user.getUsername());
+                int endOrder = orders.getEndOrder(user.getUsername());
 
                 // Display a message if no completed orders are found
-                if (userOrders.isEmpty()) {
-                    Label noOrdersLabel = createWrappedLabel("No completed orders found for " + user.getFirstName() + " " + user.getLastName());
-                    ordersContainer.getChildren().add(noOrdersLabel);
+                if (firstOrder == endOrder) {
+                    userBoxes.add(createWrappedLabel("No completed orders found for " + user.getFirstName() + " " + user.getLastName()));
                 } else {
                     // Display the user's completed orders
-                    VBox userOrdersBox = createUserOrdersBox(user, userOrders);
-                    ordersContainer.getChildren().add(userOrdersBox);
+                    userBoxes.add(createUserOrdersBox(user, orders, firstOrder, endOrder));
                 }
             }
+            ordersContainer.getChildren().setAll(userBoxes);
 
             // Apply CSS and layout updates
             ordersContainer.applyCss();
             ordersContainer.layout();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        }, Throwable::printStackTrace);
     }
 
     // Creates a VBox to display each user's completed orders
-    private VBox createUserOrdersBox(User user, List<Order> orders) {
+    private VBox createUserOrdersBox(User user, OrderLineStore orders, int firstOrder, int endOrder) {
         VBox userOrdersBox = new VBox(10);
         userOrdersBox.setStyle("-fx-padding: 10; -fx-border-color: lightblue; -fx-border-radius: 5;");
 
@@ -77,9 +101,9 @@ public class AdminOrderViewController {
         Label userLabel = createWrappedLabel("User: " + user.getFirstName() + " " + user.getLastName() + " (" + user.getUsername() + ")");
         userOrdersBox.getChildren().add(userLabel);
 
-        // Add each order to the user's order box
-        for (Order order : orders) {
-            VBox orderBox = createOrderBox(order);
+        // Add each order to the user's order box; Order objects only exist while their box is built
+        for (int order = firstOrder; order < endOrder; order++) {
+            VBox orderBox = createOrderBox(orders.toOrder(order));
             userOrdersBox.getChildren().add(orderBox);
         }
 
@@ -116,26 +140,26 @@ public class AdminOrderViewController {
         detailsHeading.setStyle("-fx-font-weight: bold; -fx-underline: true;");
         detailsBox.getChildren().add(detailsHeading);
 
-        // For each order detail, retrieve and display book information
+        // For each order detail, look up and display book information
         for (OrderDetail detail : orderDetails) {
-            try {
-                Book book = bookDao.getBookById(detail.getBookId());
-                String bookDetailText = "Title: " + book.getTitle() + 
-                                        ", Author: " + book.getAuthors() + 
-                                        ", Qty: " + detail.getQuantity() + 
-                                        ", Subtotal: " + detail.getTotalPrice() + " AUD";
-                Label bookDetailLabel = createWrappedLabel(bookDetailText);
-                bookDetailLabel.setStyle("-fx-padding: 0 0 0 10;");
-                detailsBox.getChildren().add(bookDetailLabel);
-                
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            Book book = books.get(detail.getBookId());
+            String bookDetailText = "Title: " + book.getTitle() + 
+                                    ", Author: " + book.getAuthors() + 
+                                    ", Qty: " + detail.getQuantity() + 
+                                    ", Subtotal: " + detail.getTotalPrice() + " AUD";
+            Label bookDetailLabel = createWrappedLabel(bookDetailText);
+            bookDetailLabel.setStyle("-fx-padding: 0 0 0 10;");
+            detailsBox.getChildren().add(bookDetailLabel);
         }
 
         return detailsBox;
     }
 
+    // Fetches every book referenced by the given orders with a single bulk query
+    private CompletableFuture<Map<Integer, Book>> fetchBooks(OrderLineStore orders) {
+        return dataService.getBooksByIds(orders.getDistinctBookIds());
+    }
+
     // Exports order details to a CSV file selected by the user
     @FXML
     private void exportOrders() {
@@ -145,38 +169,33 @@ public class AdminOrderViewController {
         File file = fileChooser.showSaveDialog(scrollPane.getScene().getWindow());
 
         if (file != null) {
-            try (FileWriter writer = new FileWriter(file)) {
-                // Write CSV header
-                writer.write("Username,Order ID,Date and Time,Final Price,Status,Book Title,Author,Quantity,Subtotal\n");
-
-                // Write details for each user's completed orders
-                List<User> users = orderDao.getAllUsers();
-                for (User user : users) {
-                    List<Order> userOrders = orderDao.getCompletedOrders(user.getUsername());
-                    for (Order order : userOrders) {
-                        for (OrderDetail detail : order.getOrderDetails()) {
-                            Book book = bookDao.getBookById(detail.getBookId());
-                            writer.write(user.getUsername() + "," +
-                                         order.getOrderId() + "," +
-                                         order.getOrderDatetime() + "," +
-                                         order.getFinalPrice() + "," +
-                                         order.getStatus() + "," +
-                                         book.getTitle() + "," +
-                                         book.getAuthors() + "," +
-                                         detail.getQuantity() + "," +
-                                         detail.getTotalPrice() + "\n");
-                        }
-                    }
-                }
-
+            // Stream every customer's completed orders to the file in the background
+            OrderExportTask task = dataService.exportCompletedOrders(file, null);
+            exportProgress.progressProperty().bind(task.progressProperty());
+            exportStatus.textProperty().bind(task.messageProperty());
+            exportProgress.setVisible(true);
+            exportButton.setDisable(true);
+
+            task.setOnSucceeded(event -> {
+                finishExport("Exported " + task.getValue() + " order lines.");
                 System.out.println("Order details exported successfully!");
-
-            } catch (IOException | SQLException e) {
-                e.printStackTrace();
-            }
+            });
+            task.setOnFailed(event -> {
+                finishExport("Export failed.");
+                task.getException().printStackTrace();
+            });
         }
     }
 
+    // Resets the export controls once the background export has finished
+    private void finishExport(String message) {
+        exportProgress.progressProperty().unbind();
+        exportStatus.textProperty().unbind();
+        exportProgress.setVisible(false);
+        exportStatus.setText(message);
+        exportButton.setDisable(false);
+    }
+
     // Helper method to create a wrapped label with specified text
     private Label createWrappedLabel(String text) {
         Label label = new Label(text);
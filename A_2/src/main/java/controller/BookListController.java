@@ -1,145 +1,236 @@
 package controller;
 
-import dao.OrderDaoImpl;
+import dao.ClosedOrderException;
+import javafx.animation.PauseTransition;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
-import javafx.scene.layout.Pane;
+import javafx.scene.layout.HBox;
+import javafx.util.Duration;
 import model.Book;
-import model.BookTableModel;
+import model.DataService;
 import model.Order;
 import model.OrderDetail;
 import model.User;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class BookListController {
 
+    private static final int PAGE_SIZE = 100; // Books fetched per keyset page
+    private static final int PREFETCH_ROWS = 20; // Rows from the end at which the next page is requested
+    private static final int SEARCH_LIMIT = 200; // Most relevant matches shown for a search
+
+    @FXML
+    private TextField searchField;
+
     @FXML
-    private Pane booksPane;
+    private ListView<Book> booksList;
 
-    private BookTableModel bookTableModel;
-    private OrderDaoImpl orderDao;
+    private DataService dataService;
     private List<OrderDetail> shoppingCart;
-    private Order currentOrder;
     private User user;
+    private boolean loadingPage;
+    private boolean lastPageLoaded;
+    private int requestGeneration; // Bumped whenever the search changes, so late results are dropped
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(250));
 
-    // Constructor initializing order DAO and shopping cart list
+    // Constructor initializing the shopping cart list
     public BookListController() {
-        orderDao = new OrderDaoImpl();
         shoppingCart = new ArrayList<>();
     }
 
+    // Sets the service used for background database access and loads the first page of books
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
+        loadNextPage();
+    }
+
     // Set the user and fetch any pending orders
     public void setUser(User user) {
         this.user = user;
         fetchPendingOrder();
     }
 
-    // Retrieve the user's pending order from the database if it exists
-    private void fetchPendingOrder() {
-        try {
-            List<Order> orders = orderDao.getOrdersByUser(user.getUsername());
-            for (Order order : orders) {
-                if ("pending".equalsIgnoreCase(order.getStatus())) {
-                    currentOrder = order;
-                    break;
+    // Called when the view is shown again: re-reads the listed books in one batched call and updates
+    // them in place, so stock is current without losing the search or the scroll position
+    public void refresh() {
+        List<Integer> shownIds = new ArrayList<>();
+        for (Book book : booksList.getItems()) {
+            shownIds.add(book.getId());
+        }
+        if (shownIds.isEmpty()) {
+            applySearch();
+            return;
+        }
+
+        int generation = requestGeneration;
+        DataService.onFxThread(dataService.getBooksByIds(shownIds), fresh -> {
+            if (generation != requestGeneration) {
+                return;
+            }
+            Set<Integer> requested = new HashSet<>(shownIds);
+            List<Book> items = booksList.getItems();
+            for (int i = items.size() - 1; i >= 0; i--) {
+                int bookId = items.get(i).getId();
+                Book book = fresh.get(bookId);
+                if (book != null) {
+                    items.set(i, book);
+                } else if (requested.contains(bookId)) {
+                    items.remove(i); // Deleted since it was listed
                 }
             }
-        } catch (SQLException e) {
+        }, e -> {
+            showAlert("Database Error", "Failed to load books.");
+            e.printStackTrace();
+        });
+    }
+
+    // Retrieve the user's pending order from the database if it exists
+    private void fetchPendingOrder() {
+        // Only warms the session's shared cart, so the first add to cart needs no query
+        DataService.onFxThread(dataService.findPendingOrder(user.getUsername()), order -> {}, e -> {
             showAlert("Database Error", "Failed to fetch pending orders.");
             e.printStackTrace();
-        }
+        });
     }
 
-    // Sets the book data model and displays books in the view
-    public void setModel(BookTableModel model) {
-        this.bookTableModel = model;
-        displayBooks();
+    // Shows the first page of the catalog; later pages load as the user scrolls
+    @FXML
+    public void initialize() {
+        booksList.setCellFactory(list -> new BookCell());
+        booksList.setPlaceholder(new Label("Loading books..."));
+
+        // Search once the user pauses typing rather than on every keystroke
+        searchDelay.setOnFinished(e -> applySearch());
+        searchField.textProperty().addListener((observable, oldText, newText) -> searchDelay.playFromStart());
     }
 
-    // Display the list of books in the view
-    private void displayBooks() {
-        if (bookTableModel != null) {
-            List<Book> books = bookTableModel.getBooks();
-            booksPane.getChildren().clear();
-
-            Label headingLabel = new Label("All Available Books");
-            headingLabel.setStyle("-fx-font-size: 30; -fx-font-weight: bold;");
-            headingLabel.setLayoutX(10);
-            headingLabel.setLayoutY(10);
-            booksPane.getChildren().add(headingLabel);
-
-            int yPosition = 50;
-
-            if (books.isEmpty()) {
-                Label noBooksLabel = new Label("No books available.");
-                noBooksLabel.setLayoutX(10);
-                noBooksLabel.setLayoutY(yPosition);
-                booksPane.getChildren().add(noBooksLabel);
-            } else {
-                int index = 1;
-                for (Book book : books) {
-                    Label titleLabel = new Label(index + ". " + book.getTitle() + " by " + book.getAuthors());
-                    titleLabel.setLayoutX(10);
-                    titleLabel.setLayoutY(yPosition);
-
-                    TextField quantityField = new TextField();
-                    quantityField.setLayoutX(300);
-                    quantityField.setLayoutY(yPosition);
-                    quantityField.setPromptText("Qty");
-                    quantityField.setPrefWidth(50);
-
-                    Button addButton = new Button("Add to Cart");
-                    addButton.setLayoutX(370);
-                    addButton.setLayoutY(yPosition);
-                    addButton.setOnAction(e -> {
-                        int quantity;
-                        try {
-                            quantity = Integer.parseInt(quantityField.getText());
-                            if (quantity < 1) {
-                                showAlert("Invalid Quantity", "Quantity must be greater than 0.");
-                            } else if (quantity > book.getPhysicalCopies()) {
-                                showAlert("Quantity Exceeded", "You cannot add more than " + book.getPhysicalCopies() + " copies of " + book.getTitle() + " to the cart.");
-                            } else {
-                                addToCart(book, quantity);
-                            }
-                        } catch (NumberFormatException ex) {
-                            showAlert("Invalid Input", "Please enter a valid number for quantity.");
-                        }
-                    });
-
-                    booksPane.getChildren().addAll(titleLabel, quantityField, addButton);
-                    yPosition += 30;
-                    index++;
-                }
+    // Replaces the list with search results, or goes back to paging the catalog when the box is cleared
+    private void applySearch() {
+        String query = searchField.getText().trim();
+        int generation = ++requestGeneration;
+        loadingPage = false;
+        lastPageLoaded = false;
+        booksList.getItems().clear();
+        booksList.setPlaceholder(new Label("Loading books..."));
+
+        if (query.isEmpty()) {
+            loadNextPage();
+            return;
+        }
+
+        lastPageLoaded = true; // Search results are not paged
+        DataService.onFxThread(dataService.searchBooks(query, SEARCH_LIMIT), results -> {
+            if (generation != requestGeneration) {
+                return;
+            }
+            booksList.getItems().setAll(results);
+            if (results.isEmpty()) {
+                booksList.setPlaceholder(new Label("No books match \"" + query + "\"."));
             }
-        } else {
-            Label errorLabel = new Label("Book model is not set.");
-            errorLabel.setLayoutX(10);
-            errorLabel.setLayoutY(50);
-            booksPane.getChildren().add(errorLabel);
+        }, e -> {
+            showAlert("Database Error", "Failed to search books.");
+            e.printStackTrace();
+        });
+    }
+
+    // Loads the next page of books after the last one shown, unless one is already loading
+    private void loadNextPage() {
+        if (loadingPage || lastPageLoaded || dataService == null) {
+            return;
         }
+        loadingPage = true;
+        int generation = requestGeneration;
+        List<Book> shown = booksList.getItems();
+        int afterBookId = shown.isEmpty() ? 0 : shown.get(shown.size() - 1).getId();
+
+        DataService.onFxThread(dataService.getBooksPage(afterBookId, PAGE_SIZE), page -> {
+            if (generation != requestGeneration) {
+                return;
+            }
+            loadingPage = false;
+            lastPageLoaded = page.size() < PAGE_SIZE;
+            booksList.getItems().addAll(page);
+            if (booksList.getItems().isEmpty()) {
+                booksList.setPlaceholder(new Label("No books available."));
+            }
+        }, e -> {
+            if (generation == requestGeneration) {
+                loadingPage = false;
+            }
+            showAlert("Database Error", "Failed to load books.");
+            e.printStackTrace();
+        });
     }
 
-    // Adds a book to the shopping cart or updates the existing quantity if already added
-    private void addToCart(Book book, int quantity) {
-        if (currentOrder == null) {
-            currentOrder = new Order(user.getUsername(), 0.0, "pending", null, new ArrayList<>());
-            try {
-                orderDao.createOrder(currentOrder);
-            } catch (SQLException e) {
-                showAlert("Database Error", "Failed to create a new order.");
-                e.printStackTrace();
+    // One catalog row; the ListView reuses a handful of these for whichever rows are visible
+    private class BookCell extends ListCell<Book> {
+        private final Label titleLabel = new Label();
+        private final TextField quantityField = new TextField();
+        private final Button addButton = new Button("Add to Cart");
+        private final HBox row = new HBox(10, titleLabel, quantityField, addButton);
+
+        private BookCell() {
+            titleLabel.setPrefWidth(280);
+            quantityField.setPromptText("Qty");
+            quantityField.setPrefWidth(50);
+            addButton.setOnAction(e -> {
+                Book book = getItem();
+                int quantity;
+                try {
+                    quantity = Integer.parseInt(quantityField.getText());
+                    if (quantity < 1) {
+                        showAlert("Invalid Quantity", "Quantity must be greater than 0.");
+                    } else if (quantity > book.getPhysicalCopies()) {
+                        showAlert("Quantity Exceeded", "You cannot add more than " + book.getPhysicalCopies() + " copies of " + book.getTitle() + " to the cart.");
+                    } else {
+                        addToCart(book, quantity);
+                    }
+                } catch (NumberFormatException ex) {
+                    showAlert("Invalid Input", "Please enter a valid number for quantity.");
+                }
+            });
+        }
+
+        @Override
+        protected void updateItem(Book book, boolean empty) {
+            super.updateItem(book, empty);
+            if (empty || book == null) {
+                setGraphic(null);
                 return;
             }
+            titleLabel.setText((getIndex() + 1) + ". " + book.getTitle() + " by " + book.getAuthors());
+            quantityField.clear();
+            setGraphic(row);
+
+            // Fetch the next page before the user reaches the end of the loaded rows
+            if (getIndex() >= getListView().getItems().size() - PREFETCH_ROWS) {
+                loadNextPage();
+            }
         }
+    }
+
+    // Adds to the cart shared by every screen of the session; a new cart's order row is
+    // inserted together with its first line
+    private void addToCart(Book book, int quantity) {
+        DataService.onFxThread(dataService.getCart(user.getUsername()), order -> addToOrder(order, book, quantity), e -> {
+            showAlert("Database Error", "Failed to fetch pending orders.");
+            e.printStackTrace();
+        });
+    }
 
-        for (OrderDetail detail : currentOrder.getOrderDetails()) {
+    // Adds a book to the shopping cart or updates the existing quantity if already added
+    private void addToOrder(Order order, Book book, int quantity) {
+        for (OrderDetail detail : order.getOrderDetails()) {
             if (detail.getBookId() == book.getId()) {
                 int previousQuantity = detail.getQuantity();
                 int newQuantity = previousQuantity + quantity;
@@ -155,36 +246,37 @@ public class BookListController {
 
                 detail.setQuantity(newQuantity);
                 detail.setTotalPrice(newTotalPrice);
-                currentOrder.setFinalPrice(currentOrder.getFinalPrice() + priceDifference);
+                order.setFinalPrice(order.getFinalPrice() + priceDifference);
 
-                try {
-                    orderDao.updateOrderDetails(currentOrder.getOrderId(), List.of(detail));
-                    orderDao.updateOrder(currentOrder);
-                    showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
-                } catch (SQLException e) {
-                    showAlert("Database Error", "Failed to update the order details.");
-                    e.printStackTrace();
-                }
+                saveCartLine(order, detail, false, book, quantity);
                 return;
             }
         }
 
         double totalPrice = book.getPrice() * quantity;
-        currentOrder.setFinalPrice(currentOrder.getFinalPrice() + totalPrice);
+        order.setFinalPrice(order.getFinalPrice() + totalPrice);
 
-        OrderDetail orderDetail = new OrderDetail(currentOrder.getOrderId(), book.getId(), quantity, totalPrice);
-        currentOrder.getOrderDetails().add(orderDetail);
+        OrderDetail orderDetail = new OrderDetail(order.getOrderId(), book.getId(), quantity, totalPrice);
+        order.getOrderDetails().add(orderDetail);
 
-        try {
-            orderDao.createOrderDetails(currentOrder.getOrderId(), List.of(orderDetail));
-            orderDao.updateOrder(currentOrder);
-            showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to update the order details.");
-            e.printStackTrace();
-        }
+        saveCartLine(order, orderDetail, true, book, quantity);
+    }
 
+    // Buffers the changed cart line for a background write and confirms the add
+    private void saveCartLine(Order order, OrderDetail detail, boolean newLine, Book book, int quantity) {
+        // The line is already in the shared Order, so the add is confirmed now; the write happens
+        // with the next cart flush and only its failure is reported
+        CompletableFuture<Void> written = dataService.saveCartLine(order, detail, newLine);
         System.out.println("Added " + quantity + " copies of " + book.getTitle() + " to the cart.");
+        showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
+        DataService.onFxThread(written, ignored -> { }, e -> {
+            if (e instanceof ClosedOrderException) {
+                showAlert("Cart Changed", "The order was checked out before " + book.getTitle() + " could be added. Please add it to your new cart.");
+            } else {
+                showAlert("Database Error", "Failed to add " + book.getTitle() + " to the cart.");
+            }
+            e.printStackTrace();
+        });
     }
 
     // Displays an alert message with the given title and message
@@ -1,5 +1,7 @@
 package controller;
 
+import dao.ClosedOrderException;
+
 // Import necessary JavaFX classes for GUI components and FXML management
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -15,6 +17,7 @@ import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
+import model.DataService;
 import model.Model;
 import model.Order;
 import model.OrderDetail;
@@ -23,25 +26,29 @@ import model.UserTableModel;
 import model.BookTableModel;
 import model.Book;
 
-// Import classes for handling SQL exceptions and file I/O
+// Import classes for handling file I/O
 import java.io.IOException;
-import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
-
-import dao.OrderDaoImpl;
-import javafx.concurrent.Task;
+import java.util.concurrent.CompletableFuture;
 
 public class HomeController {
+    private static final String MANAGE_USERS_VIEW = "/view/ManageUsersView.fxml";
+    private static final String MANAGE_BOOKS_VIEW = "/view/ManageBooksView.fxml";
+    private static final String PROFILE_VIEW = "/view/ProfileView.fxml";
+    private static final String BOOK_LIST_VIEW = "/view/BookListView.fxml";
+    private static final String ORDER_VIEW = "/view/OrderView.fxml";
+    private static final String CART_VIEW = "/view/CartView.fxml";
+    private static final String ADMIN_ORDER_VIEW = "/view/AdminOrderView.fxml";
+
     // Fields to manage model data, user and the stage references
     private final Model model;
     private final Stage stage;
     private final Stage parentStage;
-    private Order currentOrder;
-    private OrderDaoImpl orderDao;
+    private final DataService dataService;
     private final User user; 
     private final UserTableModel userTableModel; 
     private final BookTableModel bookTableModel; 
+    private final ViewRegistry views; // Content views kept loaded between menu clicks
 
     // FXML-injected GUI components
     @FXML
@@ -85,9 +92,12 @@ public class HomeController {
         this.parentStage = parentStage;
         this.model = model;
         this.user = user; 
-        this.userTableModel = new UserTableModel(); 
-        this.bookTableModel = new BookTableModel(); 
-        this.orderDao = new OrderDaoImpl();
+        this.userTableModel = new UserTableModel(model); 
+        this.bookTableModel = new BookTableModel(model); 
+        this.dataService = model.getDataService();
+        // How many content views stay loaded can be overridden with -Dviews.cacheSize
+        this.views = new ViewRegistry(Integer.getInteger("views.cacheSize", 4));
+        registerViews();
         this.readingRoomLabel = new Label("Reading Room");
         readingRoomLabel.setStyle("-fx-font-size: 24; -fx-text-fill: blue;");
     }
@@ -102,78 +112,65 @@ public class HomeController {
             profileMenu.setVisible(false); 
             actionsMenu.setVisible(false); 
             welcomeLabel.setText("Welcome, Admin");
+            views.preload(MANAGE_BOOKS_VIEW, ADMIN_ORDER_VIEW);
         } else { // Configure UI for regular user
             profileMenu.setVisible(true);
             actionsMenu.setVisible(true);
             adminMenu.setVisible(false); 
             welcomeLabel.setText("Welcome, " + user.getFirstName() + " " + user.getLastName());
-            displayTopFiveBooks();
+            displayTopSellers();
+            views.preload(BOOK_LIST_VIEW, CART_VIEW, ORDER_VIEW); // The screens a customer goes to next
         }
         setupMenuActions(); // Set actions for each menu item
     }
 
     // Configures each menu item to load appropriate views when clicked
     private void setupMenuActions() {
-        manageUsers.setOnAction(event -> loadView("/view/ManageUsersView.fxml"));
-        manageBooks.setOnAction(event -> loadView("/view/ManageBooksView.fxml"));
-        viewProfile.setOnAction(event -> loadView("/view/ProfileView.fxml"));
-        viewBooks.setOnAction(event -> loadView("/view/BookListView.fxml"));
-        viewOrders.setOnAction(event -> loadView("/view/OrderView.fxml")); 
-        viewCart.setOnAction(event -> loadView("/view/CartView.fxml")); 
-        adminViewOrders.setOnAction(event -> loadView("/view/AdminOrderView.fxml")); 
-        home.setOnAction(event -> displayTopFiveBooks());
+        manageUsers.setOnAction(event -> loadView(MANAGE_USERS_VIEW));
+        manageBooks.setOnAction(event -> loadView(MANAGE_BOOKS_VIEW));
+        viewProfile.setOnAction(event -> loadView(PROFILE_VIEW));
+        viewBooks.setOnAction(event -> loadView(BOOK_LIST_VIEW));
+        viewOrders.setOnAction(event -> loadView(ORDER_VIEW)); 
+        viewCart.setOnAction(event -> loadView(CART_VIEW)); 
+        adminViewOrders.setOnAction(event -> loadView(ADMIN_ORDER_VIEW)); 
+        home.setOnAction(event -> displayTopSellers());
         adminLogout.setOnAction(event -> logout());
         userLogout.setOnAction(event -> logout());   
     }
 
-    // Loads an FXML view based on the provided path and injects appropriate controllers/models
+    // Connects each content view to its models once, and says how to bring it up to date when shown again
+    private void registerViews() {
+        views.register(MANAGE_USERS_VIEW, (ManageUsersController controller) -> controller.setModel(userTableModel),
+                ManageUsersController::refresh);
+        views.register(MANAGE_BOOKS_VIEW, (ManageBooksController controller) -> {
+            controller.setModel(bookTableModel);
+            controller.setDataService(dataService);
+        }, null); // The book table is kept current by DAO change events
+        views.register(PROFILE_VIEW, (ProfileController controller) -> {
+            controller.setDataService(dataService);
+            controller.setUser(user);
+        }, ProfileController::refresh);
+        views.register(BOOK_LIST_VIEW, (BookListController controller) -> {
+            controller.setDataService(dataService);
+            controller.setUser(user);
+        }, BookListController::refresh);
+        views.register(ORDER_VIEW, (OrderViewController controller) -> {
+            controller.setDataService(dataService);
+            controller.setUser(user);
+        }, OrderViewController::refresh);
+        views.register(CART_VIEW, (ShoppingCartController controller) -> {
+            controller.setDataService(dataService);
+            controller.setUser(user);
+        }, ShoppingCartController::refresh);
+        views.register(ADMIN_ORDER_VIEW, (AdminOrderViewController controller) -> controller.setDataService(dataService),
+                AdminOrderViewController::refresh);
+    }
+
+    // Shows a content view; views already loaded are reused and refreshed rather than parsed again
     private void loadView(String fxmlPath) {
         System.out.println("Loading view: " + fxmlPath);
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlPath));
-            Node view = loader.load();
-
-            if ("/view/ManageUsersView.fxml".equals(fxmlPath)) {
-                ManageUsersController manageUsersController = loader.getController();
-                manageUsersController.setModel(userTableModel);
-                System.out.println("Model set for ManageUsersController");
-            }
-
-            if ("/view/ManageBooksView.fxml".equals(fxmlPath)) {
-                ManageBooksController manageBooksController = loader.getController();
-                manageBooksController.setModel(bookTableModel);
-                System.out.println("Model set for ManageBooksController");
-            }
-
-            if ("/view/ProfileView.fxml".equals(fxmlPath)) {
-                ProfileController profileController = loader.getController();
-                profileController.setUser(user);
-                System.out.println("User set for ProfileController");
-            }
-
-            if ("/view/BookListView.fxml".equals(fxmlPath)) {
-                BookListController bookListController = loader.getController();
-                bookListController.setModel(bookTableModel);
-                bookListController.setUser(user);
-                System.out.println("Model set for BookListController");
-            }
-
-            if ("/view/OrderView.fxml".equals(fxmlPath)) {
-                OrderViewController orderController = loader.getController();
-                orderController.setUser(user);
-                System.out.println("User set for OrderViewController");
-            }
-
-            if ("/view/CartView.fxml".equals(fxmlPath)) {
-                ShoppingCartController shoppingCartController = loader.getController();
-                shoppingCartController.setUser(user);
-                System.out.println("User set for ShoppingCartController");
-            }
-
-            if ("/view/AdminOrderView.fxml".equals(fxmlPath)) {
-                AdminOrderViewController adminOrderController = loader.getController();
-                System.out.println("Admin order view controller set up");
-            }
+            Node view = views.show(fxmlPath);
 
             if (contentArea != null) {
                 contentArea.getChildren().setAll(view);
@@ -189,6 +186,14 @@ public class HomeController {
 
     // Logs the user out and shows the login screen
     private void logout() {
+        bookTableModel.close();
+        userTableModel.close();
+        views.clear();
+        // Write any buffered cart changes now rather than on the next timer tick
+        dataService.flushCart(user.getUsername()).exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
         stage.close();
         Stage loginStage = new Stage();
         
@@ -208,21 +213,13 @@ public class HomeController {
         }
     }
 
-    // Displays the top 5 bestselling books and allows the user to add them to the cart
-    private void displayTopFiveBooks() {
-        Task<List<Book>> task = new Task<List<Book>>() {
-            @Override
-            protected List<Book> call() throws Exception {
-                return model.getBookDao().getTopFiveBooks();
-            }
-        };
-
-        task.setOnSucceeded(event -> {
-            List<Book> topBooks = task.getValue();
+    // Displays the top bestselling books and allows the user to add them to the cart
+    private void displayTopSellers() {
+        DataService.onFxThread(dataService.getTopSellers(), topBooks -> {
             Pane booksPane = new Pane();
             int yPosition = 10;
 
-            Label headingLabel = new Label("Top 5 Bestselling Books");
+            Label headingLabel = new Label("Top " + model.getTopSellers().getSize() + " Bestselling Books");
             headingLabel.setLayoutX(10);
             headingLabel.setLayoutY(yPosition);
             headingLabel.setStyle("-fx-font-size: 30;");
@@ -259,45 +256,33 @@ public class HomeController {
 
             contentArea.getChildren().setAll(booksPane);
             readingRoomLabel.setVisible(false);
-        });
-
-        task.setOnFailed(event -> {
+        }, e -> {
             System.out.println("Failed to load top books.");
             showAlert("Error", "Failed to load top books. Please try again.");
-            event.getSource().getException().printStackTrace();
+            e.printStackTrace();
         });
-
-        new Thread(task).start();
     }
 
     private void fetchPendingOrder() {
-        try {
-            List<Order> orders = orderDao.getOrdersByUser(user.getUsername());
-            for (Order order : orders) {
-                if ("pending".equalsIgnoreCase(order.getStatus())) {
-                    currentOrder = order;
-                    break;
-                }
-            }
-        } catch (SQLException e) {
+        // Only warms the session's shared cart, so the first add to cart needs no query
+        DataService.onFxThread(dataService.findPendingOrder(user.getUsername()), order -> {}, e -> {
             showAlert("Database Error", "Failed to fetch pending orders.");
             e.printStackTrace();
-        }
+        });
     }
 
+    // Adds to the cart shared by every screen of the session; a new cart's order row is
+    // inserted together with its first line
     private void addToCart(Book book, int quantity) {
-        if (currentOrder == null) {
-            currentOrder = new Order(user.getUsername(), 0.0, "pending", null, new ArrayList<>());
-            try {
-                orderDao.createOrder(currentOrder);
-            } catch (SQLException e) {
-                showAlert("Database Error", "Failed to create a new order.");
-                e.printStackTrace();
-                return;
-            }
-        }
+        DataService.onFxThread(dataService.getCart(user.getUsername()), order -> addToOrder(order, book, quantity), e -> {
+            showAlert("Database Error", "Failed to fetch pending orders.");
+            e.printStackTrace();
+        });
+    }
 
-        for (OrderDetail detail : currentOrder.getOrderDetails()) {
+    // Adds the book to the order or updates the existing quantity if already added
+    private void addToOrder(Order order, Book book, int quantity) {
+        for (OrderDetail detail : order.getOrderDetails()) {
             if (detail.getBookId() == book.getId()) {
                 int previousQuantity = detail.getQuantity();
                 int newQuantity = previousQuantity + quantity;
@@ -313,36 +298,37 @@ public class HomeController {
 
                 detail.setQuantity(newQuantity);
                 detail.setTotalPrice(newTotalPrice);
-                currentOrder.setFinalPrice(currentOrder.getFinalPrice() + priceDifference);
-
-                try {
-                    orderDao.updateOrderDetails(currentOrder.getOrderId(), List.of(detail));
-                    orderDao.updateOrder(currentOrder);
-                    showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
-                } catch (SQLException e) {
-                    showAlert("Database Error", "Failed to update the order details.");
-                    e.printStackTrace();
-                }
+                order.setFinalPrice(order.getFinalPrice() + priceDifference);
+
+                saveCartLine(order, detail, false, book, quantity);
                 return;
             }
         }
 
         double totalPrice = book.getPrice() * quantity;
-        currentOrder.setFinalPrice(currentOrder.getFinalPrice() + totalPrice);
+        order.setFinalPrice(order.getFinalPrice() + totalPrice);
 
-        OrderDetail orderDetail = new OrderDetail(currentOrder.getOrderId(), book.getId(), quantity, totalPrice);
-        currentOrder.getOrderDetails().add(orderDetail);
+        OrderDetail orderDetail = new OrderDetail(order.getOrderId(), book.getId(), quantity, totalPrice);
+        order.getOrderDetails().add(orderDetail);
 
-        try {
-            orderDao.createOrderDetails(currentOrder.getOrderId(), List.of(orderDetail));
-            orderDao.updateOrder(currentOrder);
-            showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to update the order details.");
-            e.printStackTrace();
-        }
+        saveCartLine(order, orderDetail, true, book, quantity);
+    }
 
+    // Buffers the changed cart line for a background write and confirms the add
+    private void saveCartLine(Order order, OrderDetail detail, boolean newLine, Book book, int quantity) {
+        // The line is already in the shared Order, so the add is confirmed now; the write happens
+        // with the next cart flush and only its failure is reported
+        CompletableFuture<Void> written = dataService.saveCartLine(order, detail, newLine);
         System.out.println("Added " + quantity + " copies of " + book.getTitle() + " to the cart.");
+        showAlert("Success", quantity + " copies of " + book.getTitle() + " added to cart.");
+        DataService.onFxThread(written, ignored -> { }, e -> {
+            if (e instanceof ClosedOrderException) {
+                showAlert("Cart Changed", "The order was checked out before " + book.getTitle() + " could be added. Please add it to your new cart.");
+            } else {
+                showAlert("Database Error", "Failed to add " + book.getTitle() + " to the cart.");
+            }
+            e.printStackTrace();
+        });
     }
 
     private void showAlert(String title, String message) {
@@ -363,4 +349,4 @@ public class HomeController {
         stage.setTitle("Reading Room - " + (user.isAdmin() ? "Admin Dashboard" : "User Dashboard"));
         stage.show();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
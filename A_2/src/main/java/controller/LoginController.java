@@ -1,7 +1,6 @@
 package controller;
 
 import java.io.IOException;
-import java.sql.SQLException;
 
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -14,6 +13,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import model.DataService;
 import model.Model;
 import model.User;
 
@@ -47,10 +47,10 @@ public class LoginController {
         login.setOnAction(event -> {
             // Check that both fields are not empty
             if (!name.getText().isEmpty() && !password.getText().isEmpty()) {
-                User user;
-                try {
-                    // Attempt to retrieve the user from the model
-                    user = model.getUserDao().getUser(name.getText(), password.getText());
+                login.setDisable(true); // Prevent duplicate attempts while the lookup runs
+                // Attempt to retrieve the user from the model in the background
+                DataService.onFxThread(model.getDataService().getUser(name.getText(), password.getText()), user -> {
+                    login.setDisable(false);
                     if (user != null) {
                         // If user is found, set the current user in the model
                         model.setCurrentUser(user);
@@ -72,11 +72,12 @@ public class LoginController {
                         message.setText("Wrong username or password");
                         message.setTextFill(Color.RED);
                     }
-                } catch (SQLException e) {
+                }, e -> {
                     // Display SQL error messages
+                    login.setDisable(false);
                     message.setText(e.getMessage());
                     message.setTextFill(Color.RED);
-                }
+                });
             } else {
                 // Notify user of empty input fields
                 message.setText("Empty username or password");
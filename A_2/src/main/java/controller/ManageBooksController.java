@@ -1,11 +1,22 @@
 package controller;
 
+import java.io.File;
+
+import dao.InsufficientStockException;
+import dao.StaleBookException;
 import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
 import model.Book;
+import model.BookImportTask;
 import model.BookTableModel;
+import model.DataService;
+import model.StockChange;
 
 public class ManageBooksController {
     // FXML-injected GUI components
@@ -27,17 +38,30 @@ public class ManageBooksController {
     private Button editBookButton; // Button to edit the selected book
     @FXML
     private Button deleteBookButton; // Button to delete the selected book
+    @FXML
+    private Button importBooksButton; // Button to bulk-import books from a file
+    @FXML
+    private ProgressBar importProgress; // Progress of a running import
+    @FXML
+    private Label importStatus; // Import progress and result
 
     private BookTableModel bookTableModel; // Model for managing the book data
+    private DataService dataService; // Service for background database access
+    private Book formBook; // Copy of the book as it was when its values were put into the form
 
-    // Method to set the model and load books from the database
+    // Method to set the model and load books from the database the first time the screen is opened
     public void setModel(BookTableModel bookTableModel) {
         this.bookTableModel = bookTableModel;
-        bookTableModel.loadBooksFromDatabase(); // Load books into the model
+        bookTableModel.ensureLoaded(); // Later edits arrive as change events, so no reload is needed
         bookTableModel.setupTableColumns(booksTable); // Set up table columns
         setupSelectionListener(); // Initialize selection listener for the table
     }
 
+    // Sets the service that runs bulk imports in the background
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
+    }
+
     // Initializes the controller and sets up button actions
     @FXML
     public void initialize() {
@@ -78,22 +102,27 @@ public class ManageBooksController {
     // Method to edit the selected book
     private void editBook() {
         Book selectedBook = booksTable.getSelectionModel().getSelectedItem(); // Get selected book
-        if (selectedBook != null) {
-            // Update selected book's details with input field values
-            selectedBook.setTitle(titleField.getText());
-            selectedBook.setAuthors(authorField.getText());
-            selectedBook.setPrice(Double.parseDouble(priceField.getText()));
-            selectedBook.setPhysicalCopies(Integer.parseInt(physicalCopiesField.getText()));
-            selectedBook.setSoldCopies(Integer.parseInt(soldCopiesField.getText()));
-
-            try {
-                // Update the book in the model
-                bookTableModel.updateBook(selectedBook);
-            } catch (Exception e) {
-                e.printStackTrace(); // Handle any exceptions
-            }
+        if (selectedBook != null && formBook != null) {
+            // The details go in as edited; the copy counts as the difference the admin made, so
+            // copies sold or restocked since the form was filled are kept
+            Book editedBook = new Book(formBook);
+            editedBook.setTitle(titleField.getText());
+            editedBook.setAuthors(authorField.getText());
+            editedBook.setPrice(Double.parseDouble(priceField.getText()));
+            StockChange stockChange = new StockChange(formBook.getId(),
+                    Integer.parseInt(physicalCopiesField.getText()) - formBook.getPhysicalCopies(),
+                    Integer.parseInt(soldCopiesField.getText()) - formBook.getSoldCopies());
 
-            booksTable.refresh(); // Refresh the table view to reflect changes
+            // The table row is updated by the change event once the write is done
+            bookTableModel.updateBook(editedBook, stockChange, e -> {
+                if (e instanceof StaleBookException) {
+                    showAlert("Book Changed", "This book was changed by someone else. Select it again to see the latest details.");
+                } else if (e instanceof InsufficientStockException) {
+                    showAlert("Not Enough Copies", "The copy counts cannot go below zero. The book was not changed.");
+                } else {
+                    e.printStackTrace();
+                }
+            });
             clearFields(); // Clear input fields after editing
         }
     }
@@ -107,6 +136,38 @@ public class ManageBooksController {
         }
     }
 
+    // Imports books from a CSV or TSV file selected by the user; the table reloads once the rows are in
+    @FXML
+    private void importBooks() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Books");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV and TSV Files", "*.csv", "*.tsv", "*.txt"));
+        File file = fileChooser.showOpenDialog(booksTable.getScene().getWindow());
+
+        if (file != null) {
+            BookImportTask task = dataService.importBooks(file);
+            importProgress.progressProperty().bind(task.progressProperty());
+            importStatus.textProperty().bind(task.messageProperty());
+            importProgress.setVisible(true);
+            importBooksButton.setDisable(true);
+
+            task.setOnSucceeded(event -> finishImport(task.getValue().toString()));
+            task.setOnFailed(event -> {
+                finishImport("Import failed: " + task.getException().getMessage());
+                task.getException().printStackTrace();
+            });
+        }
+    }
+
+    // Resets the import controls once the background import has finished
+    private void finishImport(String message) {
+        importProgress.progressProperty().unbind();
+        importStatus.textProperty().unbind();
+        importProgress.setVisible(false);
+        importStatus.setText(message);
+        importBooksButton.setDisable(false);
+    }
+
     // Method to clear all input fields
     private void clearFields() {
         titleField.clear();
@@ -116,10 +177,20 @@ public class ManageBooksController {
         soldCopiesField.clear();
     }
 
+    // Displays an alert dialog
+    private void showAlert(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     // Method to set up a listener for table selection changes
     private void setupSelectionListener() {
         booksTable.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
+                formBook = new Book(newValue);
                 // Populate input fields with the selected book's details
                 titleField.setText(newValue.getTitle());
                 authorField.setText(newValue.getAuthors());
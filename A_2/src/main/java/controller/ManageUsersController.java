@@ -30,6 +30,11 @@ public class ManageUsersController {
         setupSelectionListener(); // Initialize selection listener for the table
     }
 
+    // Re-reads the users when the view is shown again
+    public void refresh() {
+        userTableModel.loadUsersFromDatabase();
+    }
+
     // Initializes the controller and sets up button actions
     @FXML
     public void initialize() {
@@ -1,21 +1,23 @@
 package controller;
 
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import model.Order;
 import model.OrderDetail;
+import model.OrderLineStore;
+import model.OrderExportTask;
 import model.Book;
+import model.DataService;
 import model.User;
-import dao.OrderDaoImpl;
-import dao.BookDaoImpl;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.Map;
 
 public class OrderViewController {
 
@@ -25,24 +27,40 @@ public class OrderViewController {
     @FXML
     private ScrollPane scrollPane; // Scrollable area for the order display
 
-    private OrderDaoImpl orderDao; // DAO for handling order data
-    private BookDaoImpl bookDao; // DAO for handling book data
+    @FXML
+    private Button exportButton; // Button that starts the CSV export
+
+    @FXML
+    private ProgressBar exportProgress; // Progress of a running export
+
+    private DataService dataService; // Service for background database access
     private User user; // The current user
+    private Map<Integer, Book> books = Map.of(); // Books referenced by the displayed orders
+    private int loadGeneration; // Bumped by every load, so the results of a superseded one are dropped
 
-    // Initializes the controller and sets up DAOs
+    // Initializes the controller
     public void initialize() {
-        orderDao = new OrderDaoImpl(); // Instantiate the order DAO
-        bookDao = new BookDaoImpl(); // Instantiate the book DAO
         scrollPane.setPrefHeight(300); // Set preferred height for the scroll pane
         scrollPane.setPrefWidth(500); // Set preferred width for the scroll pane
     }
 
+    // Sets the service used for background database access
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
+    }
+
     // Sets the current user and loads their completed orders
     public void setUser(User user) {
         this.user = user;
         loadCompletedOrders(); // Load orders for the given user
     }
 
+    // Reloads the orders when the view is shown again, e.g. after a checkout; the orders
+    // already shown stay until the new ones replace them
+    public void refresh() {
+        loadCompletedOrders();
+    }
+
     // Loads completed orders for the current user
     private void loadCompletedOrders() {
         if (user == null) {
@@ -50,25 +68,30 @@ public class OrderViewController {
             return;
         }
 
-        try {
-            // Fetch completed orders from the DAO
-            List<Order> completedOrders = orderDao.getCompletedOrders(user.getUsername());
+        // Fetch completed orders, then all referenced books in one query, in the background
+        CompletableFuture<OrderLineStore> ordersFuture = dataService.getCompletedOrderLines(user.getUsername());
+        CompletableFuture<Map<Integer, Book>> booksFuture = ordersFuture.thenCompose(this::fetchBooks);
+        int generation = ++loadGeneration;
+
+        DataService.onFxThread(booksFuture, loadedBooks -> {
+            if (generation != loadGeneration) {
+                return; // A later load will show newer orders
+            }
+            books = loadedBooks;
+            OrderLineStore completedOrders = ordersFuture.join();
+            List<Node> orderBoxes = new ArrayList<>();
 
             // Check if there are no orders and display a message
-            if (completedOrders.isEmpty()) {
-                Label noOrdersLabel = createWrappedLabel("No completed orders found.");
-                ordersContainer.getChildren().add(noOrdersLabel);
+            if (completedOrders.getOrderCount() == 0) {
+                orderBoxes.add(createWrappedLabel("No completed orders found."));
             } else {
                 // Iterate over orders and create a UI representation for each
-                for (Order order : completedOrders) {
-                    VBox orderBox = createOrderBox(order);
-                    ordersContainer.getChildren().add(orderBox);
+                for (int order = 0; order < completedOrders.getOrderCount(); order++) {
+                    orderBoxes.add(createOrderBox(completedOrders.toOrder(order)));
                 }
             }
-
-        } catch (SQLException e) {
-            e.printStackTrace(); // Handle SQL exceptions
-        }
+            ordersContainer.getChildren().setAll(orderBoxes);
+        }, Throwable::printStackTrace); // Handle SQL exceptions
     }
 
     // Creates a VBox to represent an individual order
@@ -103,26 +126,26 @@ public class OrderViewController {
 
         // Iterate over each order detail
         for (OrderDetail detail : orderDetails) {
-            try {
-                // Fetch the book associated with the order detail
-                Book book = bookDao.getBookById(detail.getBookId());
-                // Create a string with book details
-                String bookDetailText = "Title: " + book.getTitle() +
-                                        ", Author: " + book.getAuthors() +
-                                        ", Qty: " + detail.getQuantity() +
-                                        ", Subtotal: " + detail.getTotalPrice() + " AUD";
-                Label bookDetailLabel = createWrappedLabel(bookDetailText); // Create label for the book detail
-                bookDetailLabel.setStyle("-fx-padding: 0 0 0 10;"); // Add padding to the label
-                detailsBox.getChildren().add(bookDetailLabel); // Add label to the details box
-
-            } catch (SQLException e) {
-                e.printStackTrace(); // Handle SQL exceptions
-            }
+            // Look up the book associated with the order detail
+            Book book = books.get(detail.getBookId());
+            // Create a string with book details
+            String bookDetailText = "Title: " + book.getTitle() +
+                                    ", Author: " + book.getAuthors() +
+                                    ", Qty: " + detail.getQuantity() +
+                                    ", Subtotal: " + detail.getTotalPrice() + " AUD";
+            Label bookDetailLabel = createWrappedLabel(bookDetailText); // Create label for the book detail
+            bookDetailLabel.setStyle("-fx-padding: 0 0 0 10;"); // Add padding to the label
+            detailsBox.getChildren().add(bookDetailLabel); // Add label to the details box
         }
 
         return detailsBox; // Return the constructed details box
     }
 
+    // Fetches every book referenced by the given orders with a single bulk query
+    private CompletableFuture<Map<Integer, Book>> fetchBooks(OrderLineStore orders) {
+        return dataService.getBooksByIds(orders.getDistinctBookIds());
+    }
+
     // Helper method to create a wrapped label
     private Label createWrappedLabel(String text) {
         Label label = new Label(text);
@@ -146,33 +169,27 @@ public class OrderViewController {
         File file = fileChooser.showSaveDialog(scrollPane.getScene().getWindow());
 
         if (file != null) {
-            try (FileWriter writer = new FileWriter(file)) {
-                // Write the CSV header
-                writer.write("Order ID,Date and Time,Final Price,Status,Book Title,Author,Quantity,Subtotal\n");
-
-                // Fetch completed orders again to export
-                List<Order> completedOrders = orderDao.getCompletedOrders(user.getUsername());
-
-                // Iterate over each order and write details to the CSV
-                for (Order order : completedOrders) {
-                    for (OrderDetail detail : order.getOrderDetails()) {
-                        Book book = bookDao.getBookById(detail.getBookId()); // Get book details
-                        writer.write(order.getOrderId() + "," +
-                                     order.getOrderDatetime() + "," +
-                                     order.getFinalPrice() + "," +
-                                     order.getStatus() + "," +
-                                     book.getTitle() + "," +
-                                     book.getAuthors() + "," +
-                                     detail.getQuantity() + "," +
-                                     detail.getTotalPrice() + "\n"); // Write order and book details to the file
-                    }
-                }
-
+            // Stream the user's completed orders to the file in the background
+            OrderExportTask task = dataService.exportCompletedOrders(file, user.getUsername());
+            exportProgress.progressProperty().bind(task.progressProperty()); // Show export progress
+            exportProgress.setVisible(true);
+            exportButton.setDisable(true); // Prevent overlapping exports
+
+            task.setOnSucceeded(event -> {
+                finishExport();
                 System.out.println("Order details exported successfully!"); // Confirmation message
-
-            } catch (IOException | SQLException e) {
-                e.printStackTrace(); // Handle IO and SQL exceptions
-            }
+            });
+            task.setOnFailed(event -> {
+                finishExport();
+                task.getException().printStackTrace(); // Handle IO and SQL exceptions
+            });
         }
     }
+
+    // Resets the export controls once the background export has finished
+    private void finishExport() {
+        exportProgress.progressProperty().unbind();
+        exportProgress.setVisible(false);
+        exportButton.setDisable(false);
+    }
 }
@@ -4,10 +4,8 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
+import model.DataService;
 import model.User;
-import dao.UserDao;
-import dao.UserDaoImpl;
-import java.sql.SQLException;
 
 public class ProfileController {
     @FXML
@@ -22,11 +20,11 @@ public class ProfileController {
     private Button saveButton; // Button to save changes
 
     private User user; // Current user object
-    private UserDao userDao; // DAO for user operations
+    private DataService dataService; // Service for background database access
 
-    // Constructor to initialize the UserDao implementation
-    public ProfileController() {
-        this.userDao = new UserDaoImpl(); // Instantiate the UserDao implementation
+    // Method to set the service used to save profile changes
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
     }
 
     // Method to set the current user and populate fields with user data
@@ -35,6 +33,11 @@ public class ProfileController {
         populateFields(); // Populate fields with user data
     }
 
+    // Discards unsaved edits when the view is shown again
+    public void refresh() {
+        populateFields();
+    }
+
     // Method to populate the text fields with user information
     private void populateFields() {
         if (user != null) {
@@ -60,12 +63,12 @@ public class ProfileController {
         user.setUsername(emailField.getText());
         user.setPassword(passwordField.getText());
 
-        try {
-            userDao.updateUser(user); // Update user in the database
+        // Update user in the database in the background
+        DataService.onFxThread(dataService.updateUser(user), ignored -> {
             System.out.println("Profile updated successfully."); // Confirmation message
-        } catch (SQLException e) {
+        }, e -> {
             e.printStackTrace(); // Handle SQL exceptions
             System.out.println("Error updating profile."); // Error message
-        }
+        });
     }
 }
@@ -1,25 +1,29 @@
 package controller;
 
-import dao.OrderDaoImpl;
+import dao.InsufficientStockException;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ButtonType;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import javafx.scene.control.Dialog;
-import model.Order;
+import model.CartModel;
+import model.DataService;
 import model.OrderDetail;
 import model.User;
 import model.Book;
 
-import java.sql.SQLException;
 import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 public class ShoppingCartController {
 
@@ -29,15 +33,20 @@ public class ShoppingCartController {
     @FXML
     private Button checkoutButton; // Button to initiate checkout
 
-    private OrderDaoImpl orderDao; // DAO implementation for order operations
-    private Order currentOrder; // Current order being processed
+    private DataService dataService; // Service for background database access
+    private CartModel cart; // Pending order and the books in it
     private User user; // Current user
 
-    private static final int ITEM_SPACING = 30; // Spacing for items in the cart
+    private final VBox itemsBox = new VBox(5); // One row per cart line
+    private final Map<Integer, HBox> rows = new HashMap<>(); // Cart rows by book id
+    private final Label emptyCartLabel = new Label("Your cart is empty.");
+    private final Label totalPriceLabel = new Label();
 
-    // Constructor initializes the OrderDao
-    public ShoppingCartController() {
-        orderDao = new OrderDaoImpl(); // Instantiate OrderDao
+    // Sets the service used for background database access
+    public void setDataService(DataService dataService) {
+        this.dataService = dataService;
+        cart = new CartModel(dataService);
+        cart.getLines().addListener(this::onLinesChanged); // Only changed lines are redrawn
     }
 
     // Sets the current user and fetches their pending order
@@ -46,108 +55,106 @@ public class ShoppingCartController {
         fetchPendingOrder(); // Load pending order
     }
 
-    // Fetches the user's pending order from the database
-    private void fetchPendingOrder() {
-        try {
-            List<Order> orders = orderDao.getOrdersByUser(user.getUsername()); // Get orders for user
-            currentOrder = orders.stream()
-                    .filter(order -> "pending".equalsIgnoreCase(order.getStatus())) // Find pending order
-                    .findFirst()
-                    .orElse(null);
+    // Re-reads the cart and its stock when the view is shown again; only changed rows are redrawn
+    public void refresh() {
+        fetchPendingOrder();
+    }
 
-            if (currentOrder == null) {
+    // Builds the static parts of the cart; rows are added and removed as the cart changes
+    @FXML
+    public void initialize() {
+        emptyCartLabel.setStyle("-fx-border-color: lightgray; -fx-border-radius: 5; -fx-padding: 30;"); // Style empty message
+        VBox content = new VBox(10, emptyCartLabel, itemsBox, totalPriceLabel);
+        content.setLayoutX(10);
+        content.setLayoutY(10);
+        cartPane.getChildren().add(content);
+        showEmptyCartMessage();
+    }
+
+    // Fetches the user's pending order and the books in it from the database
+    private void fetchPendingOrder() {
+        DataService.onFxThread(cart.load(user.getUsername()), ignored -> {
+            if (cart.getOrder() == null) {
                 System.out.println("No pending order found for user: " + user.getUsername());
             }
-
-            displayCartItems(); // Display items in the cart
-        } catch (SQLException e) {
+            redrawRows(); // Quantities and stock of lines kept from before may have changed
+        }, e -> {
             showAlert("Database Error", "Failed to fetch pending orders."); // Show alert on error
             e.printStackTrace();
-        }
+        });
     }
 
-    // Displays items in the cart
-    private void displayCartItems() throws SQLException {
-        cartPane.getChildren().clear(); // Clear existing items
+    // Adds or removes the rows for the lines that changed, then updates the total and checkout button
+    private void onLinesChanged(ListChangeListener.Change<? extends OrderDetail> change) {
+        while (change.next()) {
+            for (OrderDetail detail : change.getRemoved()) {
+                itemsBox.getChildren().remove(rows.remove(detail.getBookId()));
+            }
+            int index = change.getFrom();
+            for (OrderDetail detail : change.getAddedSubList()) {
+                HBox row = createCartRow(detail);
+                rows.put(detail.getBookId(), row);
+                itemsBox.getChildren().add(index++, row);
+            }
+        }
+        updateSummary();
+    }
 
-        if (currentOrder == null || currentOrder.getOrderDetails().isEmpty()) {
-            showEmptyCartMessage(); // Show empty cart message if no items
+    // Shows the total, or the empty cart message, and enables checkout only when every line is in stock
+    private void updateSummary() {
+        if (cart.getLines().isEmpty()) {
+            showEmptyCartMessage();
             return;
         }
 
+        emptyCartLabel.setVisible(false);
+        emptyCartLabel.setManaged(false);
+        totalPriceLabel.setVisible(true);
+        totalPriceLabel.setText("Total: $" + cart.getTotal()); // Show total price
         checkoutButton.setVisible(true); // Show checkout button
-        int yPosition = 10; // Initial Y position for item display
-        boolean disableCheckout = false; // Flag for checkout availability
-
-        // Iterate through order details to display items
-        for (OrderDetail detail : currentOrder.getOrderDetails()) {
-            Book book = orderDao.getBookById(detail.getBookId()); // Fetch book details
-
-            if (book != null) {
-                disableCheckout = displayCartItem(detail, book, yPosition, disableCheckout);
-                yPosition += ITEM_SPACING; // Increment Y position for next item
-            } else {
-                System.out.println("Book not found for ID: " + detail.getBookId());
-            }
-        }
-
-        Label totalPriceLabel = new Label("Total: $" + currentOrder.getFinalPrice()); // Show total price
-        totalPriceLabel.setLayoutX(10);
-        totalPriceLabel.setLayoutY(yPosition + 20);
-        cartPane.getChildren().add(totalPriceLabel); // Add total price label to pane
-
-        checkoutButton.setDisable(disableCheckout); // Disable checkout if needed
+        checkoutButton.setDisable(cart.isCheckoutBlocked()); // Disable checkout if needed
     }
 
     // Displays a message when the cart is empty
     private void showEmptyCartMessage() {
-        Label noItemsLabel = new Label("Your cart is empty.");
-        noItemsLabel.setStyle("-fx-border-color: lightgray; -fx-border-radius: 5; -fx-padding: 30;"); // Style empty message
-        noItemsLabel.setLayoutX(10);
-        noItemsLabel.setLayoutY(10);
-        cartPane.getChildren().add(noItemsLabel); // Add message to pane
+        emptyCartLabel.setVisible(true);
+        emptyCartLabel.setManaged(true);
+        totalPriceLabel.setVisible(false);
         checkoutButton.setVisible(false); // Hide checkout button
     }
 
-    // Displays a single cart item
-    private boolean displayCartItem(OrderDetail detail, Book book, int yPosition, boolean disableCheckout) {
-        String itemText = detail.getQuantity() + " x " + book.getTitle() + " by " + book.getAuthors() + " - $" + detail.getTotalPrice() + " AUD";
-
+    // Creates the row for a single cart item
+    private HBox createCartRow(OrderDetail detail) {
         TextFlow itemFlow = new TextFlow();
-        itemFlow.setLayoutX(10);
-        itemFlow.setLayoutY(yPosition);
         itemFlow.setPrefWidth(350);
         itemFlow.setStyle("-fx-padding: 5;");
+        fillCartItem(itemFlow, detail);
+
+        Button removeButton = new Button("Remove"); // Button to remove item from cart
+        removeButton.setOnAction(event -> removeItemFromCart(detail)); // Remove item from cart
+
+        return new HBox(40, itemFlow, removeButton);
+    }
+
+    // Writes the item text and any stock warning into an item's TextFlow
+    private void fillCartItem(TextFlow itemFlow, OrderDetail detail) {
+        Book book = cart.getBook(detail.getBookId()); // Look up book details
+        if (book == null) {
+            System.out.println("Book not found for ID: " + detail.getBookId());
+            itemFlow.getChildren().setAll(new Text(detail.getQuantity() + " x unavailable book #" + detail.getBookId()));
+            return;
+        }
 
+        String itemText = detail.getQuantity() + " x " + book.getTitle() + " by " + book.getAuthors() + " - $" + detail.getTotalPrice() + " AUD";
         Text itemLabel = new Text(itemText);
         itemLabel.setStyle("-fx-font-weight: normal; -fx-fill: black;");
 
         // Check stock availability and display warning if necessary
         if (detail.getQuantity() > book.getPhysicalCopies()) {
-            disableCheckout = true; // Disable checkout if stock is insufficient
-            Text stockWarningLabel = createStockWarningLabel(book);
-            itemFlow.getChildren().addAll(itemLabel, stockWarningLabel); // Add warning to display
+            itemFlow.getChildren().setAll(itemLabel, createStockWarningLabel(book)); // Add warning to display
         } else {
-            itemFlow.getChildren().add(itemLabel); // Add item label to display
+            itemFlow.getChildren().setAll(itemLabel); // Add item label to display
         }
-
-        cartPane.getChildren().add(itemFlow); // Add item to pane
-
-        Button removeButton = new Button("Remove"); // Button to remove item from cart
-        removeButton.setLayoutX(400);
-        removeButton.setLayoutY(yPosition);
-        cartPane.getChildren().add(removeButton); // Add remove button to pane
-
-        // Set action for the remove button
-        removeButton.setOnAction(event -> {
-            try {
-                removeItemFromCart(detail); // Remove item from cart
-            } catch (SQLException e) {
-                e.printStackTrace(); // Handle SQL exceptions
-            }
-        });
-
-        return disableCheckout; // Return checkout availability status
     }
 
     // Creates a warning label for insufficient stock
@@ -163,24 +170,39 @@ public class ShoppingCartController {
         return stockWarningLabel; // Return stock warning label
     }
 
-    // Removes an item from the cart and updates the order
-    private void removeItemFromCart(OrderDetail detail) throws SQLException {
-        currentOrder.getOrderDetails().remove(detail); // Remove item from order details
-
-        double updatedPrice = currentOrder.getFinalPrice() - detail.getTotalPrice(); // Update total price
-        currentOrder.setFinalPrice(updatedPrice);
+    // Re-reads stock for all lines in one query and redraws only the stock warnings
+    private void refreshStockWarnings() {
+        DataService.onFxThread(cart.refreshStock(), ignored -> redrawRows(), e -> {
+            showAlert("Database Error", "Failed to load the books in your cart."); // Show alert on error
+            e.printStackTrace();
+        });
+    }
 
-        // Remove order detail from database
-        orderDao.removeOrderDetail(detail.getBookId(), detail.getOrderId());
-        orderDao.updateOrder(currentOrder); // Update order in the database
+    // Rewrites the text of every existing row in place, then the total and checkout button
+    private void redrawRows() {
+        for (OrderDetail detail : cart.getLines()) {
+            HBox row = rows.get(detail.getBookId());
+            if (row != null) {
+                fillCartItem((TextFlow) row.getChildren().get(0), detail);
+            }
+        }
+        updateSummary();
+    }
 
-        displayCartItems(); // Refresh displayed cart items
+    // Removes an item from the cart; the row goes at once and the database sees one write
+    private void removeItemFromCart(OrderDetail detail) {
+        DataService.onFxThread(cart.remove(detail), ignored -> {}, e -> {
+            showAlert("Database Error", "Failed to remove the item from your cart.");
+            e.printStackTrace();
+            dataService.invalidatePendingOrder();
+            fetchPendingOrder(); // Resynchronise with what the database holds
+        });
     }
 
     // Initiates the checkout process
     @FXML
     private void onCheckout() {
-        if (currentOrder == null || currentOrder.getOrderDetails().isEmpty()) {
+        if (cart.getLines().isEmpty()) {
             showAlert("Empty Cart", "Your cart is empty. Add items before proceeding to checkout.");
         } else if (checkoutButton.isDisabled()) {
             showAlert("Checkout Unavailable", "Some items in your cart exceed available stock. Please adjust quantities or remove items marked as Sold Out.");
@@ -204,7 +226,7 @@ public class ShoppingCartController {
         TextField cvvField = new TextField();
         cvvField.setPromptText("CVV (3 digits)");
 
-        String totalPrice = currentOrder != null ? String.format("Total Price: $%.2f", currentOrder.getFinalPrice()) : "$0.00";
+        String totalPrice = cart.getOrder() != null ? String.format("Total Price: $%.2f", cart.getTotal()) : "$0.00";
         Label priceLabel = new Label(totalPrice); // Show total price in dialog
 
         javafx.scene.layout.VBox dialogPaneContent = new javafx.scene.layout.VBox(10, priceLabel, cardNumberField, expiryDateField, cvvField);
@@ -275,17 +297,20 @@ public class ShoppingCartController {
 
     // Completes the checkout process
     private void completeCheckout() {
-        try {
-            orderDao.updateOrderStatus(currentOrder.getOrderId(), "completed"); // Update order status
+        // Check stock, update it and complete the order in one background transaction
+        DataService.onFxThread(dataService.checkout(cart.getOrder()), ignored -> {
             showAlert("Checkout Successful", "Your order has been placed successfully!");
-            currentOrder = null; // Reset current order
-            showEmptyCartMessage(); // Show empty cart message
-            fetchPendingOrder(); // Reload pending order
-            displayCartItems(); // Refresh cart items
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to complete checkout."); // Show alert on error
-            e.printStackTrace();
-        }
+            cart.clear(); // The order is complete, so the cart is now empty
+        }, e -> {
+            if (e instanceof InsufficientStockException) {
+                // Another customer bought the last copies first; show the new stock warnings
+                showAlert("Checkout Unavailable", "Some items in your cart exceed available stock. Please adjust quantities or remove items marked as Sold Out.");
+                refreshStockWarnings();
+            } else {
+                showAlert("Database Error", "Failed to complete checkout."); // Show alert on error
+                e.printStackTrace();
+            }
+        });
     }
 
     // Displays an alert dialog
@@ -1,7 +1,5 @@
 package controller;
 
-import java.sql.SQLException;
-
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -10,8 +8,8 @@ import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import model.DataService;
 import model.Model;
-import model.User;
 
 public class SignupController {
     @FXML
@@ -49,16 +47,13 @@ public class SignupController {
             if (!first_name.getText().isEmpty() && !last_name.getText().isEmpty() 
                 && !username.getText().isEmpty() && !password.getText().isEmpty()) {
                 
-                User user; // Variable to store the created user
-                try {
-                    // Create a new user via the model's user DAO
-                    user = model.getUserDao().createUser(
-                            username.getText(), 
-                            password.getText(), 
-                            first_name.getText(), 
-                            last_name.getText()
-                    );
-                    
+                // Create a new user via the model's user DAO in the background
+                DataService.onFxThread(model.getDataService().createUser(
+                        username.getText(), 
+                        password.getText(), 
+                        first_name.getText(), 
+                        last_name.getText()
+                ), user -> {
                     // Check if the user was created successfully
                     if (user != null) {
                         status.setText("Created " + user.getUsername()); // Show success message
@@ -67,10 +62,10 @@ public class SignupController {
                         status.setText("Cannot create user"); // Show error message
                         status.setTextFill(Color.RED); // Set text color to red
                     }
-                } catch (SQLException e) {
+                }, e -> {
                     status.setText(e.getMessage()); // Display SQL error message
                     status.setTextFill(Color.RED); // Set text color to red
-                }
+                });
             } else {
                 // Inform the user to fill in all fields if any are empty
                 status.setText("Please fill in all fields");
@@ -0,0 +1,138 @@
+package controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import model.DataService;
+
+// Keeps the content views of the home screen warm. Each registered FXML view is parsed and wired
+// to its data the first time it is needed, then kept with its controller; showing it again only
+// runs its refresh step, which re-reads data into the existing nodes. The most recently shown
+// views are kept, up to maxViews, and the least recently shown one is dropped beyond that.
+// preload() parses views on a background thread and wires them on the FX thread, so the first
+// switch to a likely next screen is instant too. Apart from that parsing, used on the FX thread only.
+public class ViewRegistry {
+    private final int maxViews;
+    private final Map<String, ViewSetup<?>> setups = new HashMap<>();
+    private final Map<String, LoadedView> views;
+    private final Set<String> preloading = new HashSet<>();
+
+    // How a view is connected to its data when created, and brought up to date when shown again
+    private static class ViewSetup<C> {
+        private final Consumer<C> wire;
+        private final Consumer<C> refresh;
+
+        private ViewSetup(Consumer<C> wire, Consumer<C> refresh) {
+            this.wire = wire;
+            this.refresh = refresh;
+        }
+    }
+
+    private static class LoadedView {
+        private final Node root;
+        private final Object controller;
+
+        private LoadedView(Node root, Object controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
+
+    public ViewRegistry(int maxViews) {
+        this.maxViews = Math.max(1, maxViews);
+        // Access order, so the eldest entry is the least recently shown view
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LoadedView> eldest) {
+                if (size() > ViewRegistry.this.maxViews) {
+                    System.out.println("Dropping cached view: " + eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Registers a view; refresh may be null for views that keep themselves current
+    public <C> void register(String fxmlPath, Consumer<C> wire, Consumer<C> refresh) {
+        setups.put(fxmlPath, new ViewSetup<>(wire, refresh));
+    }
+
+    // Returns the view ready to display: a cached one is refreshed, otherwise it is loaded and wired now
+    public Node show(String fxmlPath) throws IOException {
+        LoadedView view = views.get(fxmlPath);
+        if (view != null) {
+            refresh(fxmlPath, view.controller);
+            return view.root;
+        }
+        return wire(fxmlPath, parse(fxmlPath)).root;
+    }
+
+    // Loads views in the background so that showing them later needs no parsing or first data load
+    public void preload(String... fxmlPaths) {
+        for (String fxmlPath : fxmlPaths) {
+            if (views.containsKey(fxmlPath) || !preloading.add(fxmlPath)) {
+                continue;
+            }
+            CompletableFuture<FXMLLoader> parsed = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return parse(fxmlPath);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, DataService.getExecutor());
+
+            DataService.onFxThread(parsed, loader -> {
+                preloading.remove(fxmlPath);
+                if (!views.containsKey(fxmlPath)) { // Shown, and so loaded, while this was parsing
+                    wire(fxmlPath, loader);
+                }
+            }, e -> {
+                preloading.remove(fxmlPath);
+                System.out.println("Failed to preload view: " + fxmlPath);
+                e.printStackTrace();
+            });
+        }
+    }
+
+    // Forgets every cached view, e.g. at logout
+    public void clear() {
+        views.clear();
+    }
+
+    private FXMLLoader parse(String fxmlPath) throws IOException {
+        FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlPath));
+        loader.load();
+        return loader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> LoadedView wire(String fxmlPath, FXMLLoader loader) {
+        ViewSetup<C> setup = (ViewSetup<C>) setups.get(fxmlPath);
+        C controller = loader.getController();
+        if (setup != null) {
+            setup.wire.accept(controller);
+        }
+        LoadedView view = new LoadedView(loader.getRoot(), controller);
+        views.put(fxmlPath, view);
+        System.out.println("Loaded view: " + fxmlPath);
+        return view;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> void refresh(String fxmlPath, Object controller) {
+        ViewSetup<C> setup = (ViewSetup<C>) setups.get(fxmlPath);
+        if (setup != null && setup.refresh != null) {
+            setup.refresh.accept((C) controller);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package dao;
+
+// Notified after a DAO has written a book row
+public interface BookChangeListener {
+    void bookChanged(int bookId);
+    void bookRemoved(int bookId);
+    // Many rows were written at once, e.g. by a bulk import; anything cached may be stale
+    void catalogChanged();
+}
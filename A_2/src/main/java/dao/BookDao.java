@@ -1,16 +1,26 @@
 package dao;
 
 import model.Book;
+import model.StockChange;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface BookDao {
-    void setup() throws SQLException; 
+    void setup(Connection connection) throws SQLException; 
     void createBook(Book book) throws SQLException; 
+	void createBooks(List<Book> books) throws SQLException;
     List<Book> getAllBooks() throws SQLException; 
-    void updateBook(Book book) throws SQLException; 
+	void updateBookDetails(Book book, StockChange stockChange) throws SQLException;
+	void adjustStock(List<StockChange> changes) throws SQLException;
 	List<Book> getTopFiveBooks() throws SQLException;
 	void deleteBook(int bookId) throws SQLException;
 	Book getBookById(int bookId) throws SQLException;
+	Map<Integer, Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException;
+	List<Book> getBooksPage(int afterBookId, int limit) throws SQLException;
+	List<Book> searchBooks(String query, int limit) throws SQLException;
+	boolean hasBooks() throws SQLException;
 }
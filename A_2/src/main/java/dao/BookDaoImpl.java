@@ -1,20 +1,34 @@
 package dao;
 
 import model.Book;
+import model.StockChange;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class BookDaoImpl implements BookDao {
     private final String TABLE_NAME = "books";
+    // Stays well below SQLite's limit on host parameters per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+    // IN (...) lists are padded up to one of these lengths, so a handful of SQL strings cover every
+    // lookup and the statement cache is not churned by one entry per list length
+    private static final int[] ID_LIST_SIZES = { 1, 10, 50, 100, MAX_IDS_PER_QUERY };
+    // From this many rows createBooks indexes them for search in one statement instead of row by row
+    private static final int BULK_INDEX_THRESHOLD = 1000;
+    private static final String FTS_INSERT_TRIGGER = "books_fts_insert";
 
     public BookDaoImpl() {
     }
 
     @Override
-    public void setup() throws SQLException {
-        try (Connection connection = Database.getConnection();
-             Statement stmt = connection.createStatement()) {
+    public void setup(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
             String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
                     + "book_id INTEGER PRIMARY KEY AUTOINCREMENT, "
                     + "title VARCHAR(255) NOT NULL, "
@@ -45,6 +59,7 @@ public class BookDaoImpl implements BookDao {
                 if (generatedKeys.next()) {
                     book.setId(generatedKeys.getInt(1));
                     System.out.println("Generated book ID: " + book.getId());
+                    ChangeNotifier.fireBookChanged(book.getId());
                 } else {
                     throw new SQLException("Creating book failed, no ID obtained.");
                 }
@@ -52,6 +67,69 @@ public class BookDaoImpl implements BookDao {
         }
     }
 
+    // Inserts the books in one transaction with a single batched statement. Ids are not read back,
+    // so listeners get one catalogChanged event instead of one event per row.
+    // For large batches the per-row full-text trigger is dropped for the transaction and the new
+    // rows are indexed with a single INSERT ... SELECT, which is several times faster; the trigger
+    // is recreated before commit, so other connections never see the table without it.
+    @Override
+    public void createBooks(List<Book> books) throws SQLException {
+        if (books.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO " + TABLE_NAME + " (title, authors, physical_copies, price, sold_copies) VALUES (?, ?, ?, ?, ?)";
+        try (Connection connection = Database.getConnection()) {
+            String triggerSql = books.size() >= BULK_INDEX_THRESHOLD ? findTriggerSql(connection, FTS_INSERT_TRIGGER) : null;
+            connection.setAutoCommit(false);
+            try (Statement ddl = connection.createStatement();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                int lastIdBefore = 0;
+                if (triggerSql != null) {
+                    // Writing first takes SQLite's write lock, so the id read below cannot go stale
+                    ddl.executeUpdate("DROP TRIGGER " + FTS_INSERT_TRIGGER);
+                    try (ResultSet rs = ddl.executeQuery("SELECT COALESCE(MAX(book_id), 0) FROM " + TABLE_NAME)) {
+                        rs.next();
+                        lastIdBefore = rs.getInt(1);
+                    }
+                }
+
+                for (Book book : books) {
+                    stmt.setString(1, book.getTitle());
+                    stmt.setString(2, book.getAuthors());
+                    stmt.setInt(3, book.getPhysicalCopies());
+                    stmt.setDouble(4, book.getPrice());
+                    stmt.setInt(5, book.getSoldCopies());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                if (triggerSql != null) {
+                    ddl.executeUpdate("INSERT INTO books_fts (rowid, title, authors) " +
+                            "SELECT book_id, title, authors FROM " + TABLE_NAME + " WHERE book_id > " + lastIdBefore);
+                    ddl.executeUpdate(triggerSql);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        ChangeNotifier.fireCatalogChanged();
+    }
+
+    // The CREATE statement of a trigger, or null when the schema has no such trigger
+    private static String findTriggerSql(Connection connection, String name) throws SQLException {
+        String sql = "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
     @Override
     public List<Book> getAllBooks() throws SQLException {
         String sql = "SELECT * FROM " + TABLE_NAME;
@@ -60,15 +138,7 @@ public class BookDaoImpl implements BookDao {
              Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("book_id"),
-                    rs.getString("title"),
-                    rs.getString("authors"),
-                    rs.getInt("physical_copies"),
-                    rs.getDouble("price"),
-                    rs.getInt("sold_copies")
-                );
-                books.add(book);
+                books.add(mapBook(rs));
             }
         }
 
@@ -83,20 +153,100 @@ public class BookDaoImpl implements BookDao {
             stmt.setInt(1, bookId);
             stmt.executeUpdate();
         }
+        ChangeNotifier.fireBookRemoved(bookId);
     }
 
+    // Saves title, authors and price only if the row still has the version the caller read, so a stale
+    // form cannot overwrite a newer edit, and moves the copy counts by stockChange (which may be empty)
+    // in the same transaction; either failure leaves the book untouched. Copy counts are never written
+    // absolutely, so an edit cannot undo a checkout or restock made since the read.
     @Override
-    public void updateBook(Book book) throws SQLException {
-        String sql = "UPDATE " + TABLE_NAME + " SET title = ?, authors = ?, physical_copies = ?, price = ?, sold_copies = ? WHERE book_id = ?";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthors());
-            stmt.setInt(3, book.getPhysicalCopies());
-            stmt.setDouble(4, book.getPrice());
-            stmt.setInt(5, book.getSoldCopies());
-            stmt.setInt(6, book.getId());
-            stmt.executeUpdate();
+    public void updateBookDetails(Book book, StockChange stockChange) throws SQLException {
+        String sql = "UPDATE " + TABLE_NAME + " SET title = ?, authors = ?, price = ?, version = version + 1 WHERE book_id = ? AND version = ?";
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, book.getTitle());
+                    stmt.setString(2, book.getAuthors());
+                    stmt.setDouble(3, book.getPrice());
+                    stmt.setInt(4, book.getId());
+                    stmt.setInt(5, book.getVersion());
+                    if (stmt.executeUpdate() == 0) {
+                        throw new StaleBookException(book.getId());
+                    }
+                }
+                if (!stockChange.isEmpty()) {
+                    applyStockChanges(connection, List.of(stockChange));
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        // Inside the writer's group the new version only holds if the whole group commits too
+        int version = book.getVersion() + 1;
+        Database.getWriter().whenGroupEnds(() -> book.setVersion(version), null);
+        ChangeNotifier.fireBookChanged(book.getId());
+    }
+
+    // Applies every change in one transaction; none is applied if any book would go below zero copies
+    @Override
+    public void adjustStock(List<StockChange> changes) throws SQLException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                applyStockChanges(connection, changes);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        Set<Integer> bookIds = new LinkedHashSet<>();
+        for (StockChange change : changes) {
+            bookIds.add(change.getBookId());
+        }
+        for (int bookId : bookIds) {
+            ChangeNotifier.fireBookChanged(bookId);
+        }
+    }
+
+    // Runs the changes as one batched UPDATE on the caller's transaction. Each row moves relative to
+    // its current counts, and only while neither count goes below zero, so no read is needed first and
+    // concurrent writers cannot oversell. Throws InsufficientStockException naming the rows left unchanged.
+    static void applyStockChanges(Connection connection, List<StockChange> changes) throws SQLException {
+        String sql = "UPDATE books SET physical_copies = physical_copies + ?, sold_copies = sold_copies + ? " +
+                "WHERE book_id = ? AND physical_copies + ? >= 0 AND sold_copies + ? >= 0";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (StockChange change : changes) {
+                stmt.setInt(1, change.getPhysicalDelta());
+                stmt.setInt(2, change.getSoldDelta());
+                stmt.setInt(3, change.getBookId());
+                stmt.setInt(4, change.getPhysicalDelta());
+                stmt.setInt(5, change.getSoldDelta());
+                stmt.addBatch();
+            }
+            int[] counts = stmt.executeBatch();
+
+            List<Integer> failed = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    failed.add(changes.get(i).getBookId());
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new InsufficientStockException(failed);
+            }
         }
     }
 
@@ -108,20 +258,81 @@ public class BookDaoImpl implements BookDao {
              Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("book_id"),
-                    rs.getString("title"),
-                    rs.getString("authors"),
-                    rs.getInt("physical_copies"),
-                    rs.getDouble("price"),
-                    rs.getInt("sold_copies")
-                );
-                books.add(book);
+                books.add(mapBook(rs));
+            }
+        }
+        return books;
+    }
+
+    // Stops at the first row, so it costs the same however large the catalog is
+    @Override
+    public boolean hasBooks() throws SQLException {
+        String sql = "SELECT EXISTS (SELECT 1 FROM " + TABLE_NAME + ")";
+        try (Connection connection = Database.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() && rs.getInt(1) == 1;
+        }
+    }
+
+    // Keyset pagination: the next page starts after the last book id of the previous one,
+    // so every page is an index range scan on the primary key however deep the user scrolls
+    @Override
+    public List<Book> getBooksPage(int afterBookId, int limit) throws SQLException {
+        String sql = "SELECT * FROM " + TABLE_NAME + " WHERE book_id > ? ORDER BY book_id LIMIT ?";
+        List<Book> books = new ArrayList<>();
+        try (Connection connection = Database.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, afterBookId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(mapBook(rs));
+                }
+            }
+        }
+        return books;
+    }
+
+    // Ranked full-text search over titles and authors; every word in the query is matched as a prefix
+    @Override
+    public List<Book> searchBooks(String query, int limit) throws SQLException {
+        String match = toMatchExpression(query);
+        List<Book> books = new ArrayList<>();
+        if (match.isEmpty()) {
+            return books;
+        }
+
+        // bm25 scores are lower for better matches; a title hit counts for more than an author hit
+        String sql = "SELECT b.* FROM books_fts f JOIN " + TABLE_NAME + " b ON b.book_id = f.rowid " +
+                "WHERE books_fts MATCH ? ORDER BY bm25(books_fts, 10.0, 5.0), b.book_id LIMIT ?";
+        try (Connection connection = Database.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, match);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(mapBook(rs));
+                }
             }
         }
         return books;
     }
 
+    // Turns free text such as "java prog" into the FTS5 query "java"* AND "prog"*
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(" AND ");
+                }
+                match.append('"').append(word).append("\"*");
+            }
+        }
+        return match.toString();
+    }
+
     @Override
     public Book getBookById(int bookId) throws SQLException {
         String sql = "SELECT * FROM " + TABLE_NAME + " WHERE book_id = ?";        
@@ -130,18 +341,64 @@ public class BookDaoImpl implements BookDao {
             stmt.setInt(1, bookId);            
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return new Book(
-                        rs.getInt("book_id"),
-                        rs.getString("title"),
-                        rs.getString("authors"),
-                        rs.getInt("physical_copies"),
-                        rs.getDouble("price"),
-                        rs.getInt("sold_copies")
-                    );
+                    return mapBook(rs);
                 }
             }
         }
         return null;
     }
 
+    @Override
+    public Map<Integer, Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException {
+        Map<Integer, Book> books = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        if (ids.isEmpty()) {
+            return books;
+        }
+
+        try (Connection connection = Database.getConnection()) {
+            // Resolve the ids with one IN (...) query per chunk
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                int size = paddedIdListSize(chunk.size());
+                String placeholders = String.join(", ", Collections.nCopies(size, "?"));
+                String sql = "SELECT * FROM " + TABLE_NAME + " WHERE book_id IN (" + placeholders + ")";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    // The spare slots repeat the last id, which matches the same row again
+                    for (int i = 0; i < size; i++) {
+                        stmt.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Book book = mapBook(rs);
+                            books.put(book.getId(), book);
+                        }
+                    }
+                }
+            }
+        }
+        return books;
+    }
+
+    private static int paddedIdListSize(int count) {
+        for (int size : ID_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return count;
+    }
+
+    private Book mapBook(ResultSet rs) throws SQLException {
+        Book book = new Book(
+            rs.getInt("book_id"),
+            rs.getString("title"),
+            rs.getString("authors"),
+            rs.getInt("physical_copies"),
+            rs.getDouble("price"),
+            rs.getInt("sold_copies")
+        );
+        book.setVersion(rs.getInt("version"));
+        return book;
+    }
 }
@@ -0,0 +1,245 @@
+package dao;
+
+import model.Book;
+import model.StockChange;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// BookDao decorator that keeps the whole catalog in memory, indexed by book id.
+// Writes made through this DAO update the cache directly; writes made through any
+// other DAO instance arrive via ChangeNotifier and mark the affected entries stale.
+// Callers always receive copies, so editing a returned Book never touches the cache.
+public final class CachingBookDao implements BookDao, BookChangeListener {
+    private final BookDao delegate;
+    private final ConcurrentSkipListMap<Integer, Book> books = new ConcurrentSkipListMap<>();
+    private final Set<Integer> stale = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    // Cache statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingBookDao(BookDao delegate) {
+        this.delegate = delegate;
+        ChangeNotifier.addBookListener(this);
+    }
+
+    @Override
+    public void setup(Connection connection) throws SQLException {
+        delegate.setup(connection);
+    }
+
+    @Override
+    public void createBook(Book book) throws SQLException {
+        delegate.createBook(book);
+        store(book);
+    }
+
+    // The new rows arrive as a catalogChanged event, which drops the cache
+    @Override
+    public void createBooks(List<Book> books) throws SQLException {
+        delegate.createBooks(books);
+    }
+
+    @Override
+    public void updateBookDetails(Book book, StockChange stockChange) throws SQLException {
+        delegate.updateBookDetails(book, stockChange);
+        // Not stored: the caller's copy counts may be older than the row's; the change event marks it stale
+    }
+
+    // Changed rows arrive as bookChanged events and are re-read on next use
+    @Override
+    public void adjustStock(List<StockChange> changes) throws SQLException {
+        delegate.adjustStock(changes);
+    }
+
+    @Override
+    public void deleteBook(int bookId) throws SQLException {
+        delegate.deleteBook(bookId);
+        bookRemoved(bookId);
+    }
+
+    @Override
+    public List<Book> getAllBooks() throws SQLException {
+        loadCatalog();
+        return books.values().stream().map(Book::new).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Book> getTopFiveBooks() throws SQLException {
+        loadCatalog();
+        return books.values().stream()
+                .sorted(Comparator.comparingInt(Book::getSoldCopies).reversed().thenComparingInt(Book::getId))
+                .limit(5)
+                .map(Book::new)
+                .collect(Collectors.toList());
+    }
+
+    // Served from the id-ordered cache, matching BookDaoImpl's keyset order
+    @Override
+    public List<Book> getBooksPage(int afterBookId, int limit) throws SQLException {
+        loadCatalog();
+        return books.tailMap(afterBookId, false).values().stream()
+                .limit(limit)
+                .map(Book::new)
+                .collect(Collectors.toList());
+    }
+
+    // Answered from the cache once it is loaded; otherwise a cheap query rather than loading the catalog
+    @Override
+    public boolean hasBooks() throws SQLException {
+        if (loaded && !books.isEmpty()) {
+            return true;
+        }
+        return delegate.hasBooks();
+    }
+
+    // Searches always go to the full-text index
+    @Override
+    public List<Book> searchBooks(String query, int limit) throws SQLException {
+        return delegate.searchBooks(query, limit);
+    }
+
+    @Override
+    public Book getBookById(int bookId) throws SQLException {
+        Book cached = books.get(bookId);
+        if (cached != null && !stale.contains(bookId)) {
+            hits.incrementAndGet();
+            return new Book(cached);
+        }
+        if (cached == null && loaded && !stale.contains(bookId)) {
+            // The full catalog is cached, so an absent id does not exist
+            hits.incrementAndGet();
+            return null;
+        }
+
+        misses.incrementAndGet();
+        stale.remove(bookId);
+        Book book = delegate.getBookById(bookId);
+        if (book != null) {
+            books.put(bookId, new Book(book));
+        } else {
+            books.remove(bookId);
+        }
+        return book;
+    }
+
+    @Override
+    public Map<Integer, Book> getBooksByIds(Collection<Integer> bookIds) throws SQLException {
+        Map<Integer, Book> result = new HashMap<>();
+        Set<Integer> missing = new HashSet<>();
+        for (Integer bookId : bookIds) {
+            Book cached = books.get(bookId);
+            if (cached != null && !stale.contains(bookId)) {
+                hits.incrementAndGet();
+                result.put(bookId, new Book(cached));
+            } else if (!(cached == null && loaded && !stale.contains(bookId))) {
+                missing.add(bookId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            stale.removeAll(missing);
+            Map<Integer, Book> loadedBooks = delegate.getBooksByIds(missing);
+            for (Integer bookId : missing) {
+                Book book = loadedBooks.get(bookId);
+                if (book != null) {
+                    books.put(bookId, new Book(book));
+                    result.put(bookId, book);
+                } else {
+                    books.remove(bookId);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Loads the catalog on first use and afterwards re-reads only the stale entries
+    private void loadCatalog() throws SQLException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    misses.incrementAndGet();
+                    stale.clear();
+                    books.clear();
+                    for (Book book : delegate.getAllBooks()) {
+                        books.put(book.getId(), book);
+                    }
+                    loaded = true;
+                    return;
+                }
+            }
+        }
+
+        if (stale.isEmpty()) {
+            hits.incrementAndGet();
+            return;
+        }
+        List<Integer> staleIds = new ArrayList<>(stale);
+        getBooksByIds(staleIds);
+    }
+
+    private void store(Book book) {
+        stale.remove(book.getId());
+        books.put(book.getId(), new Book(book));
+    }
+
+    // Drops the whole catalog; the next read reloads it from the database
+    public synchronized void invalidateAll() {
+        evictions.addAndGet(books.size());
+        books.clear();
+        stale.clear();
+        loaded = false;
+    }
+
+    @Override
+    public void bookChanged(int bookId) {
+        stale.add(bookId);
+        if (books.remove(bookId) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bookRemoved(int bookId) {
+        stale.remove(bookId);
+        if (books.remove(bookId) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void catalogChanged() {
+        invalidateAll();
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    public int getSize() { return books.size(); }
+
+    @Override
+    public String toString() {
+        return "CachingBookDao{" +
+                "size=" + getSize() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
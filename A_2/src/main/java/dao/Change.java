@@ -0,0 +1,29 @@
+package dao;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+// One change event. ChangeNotifier delivers it to this instance's listeners, and ChangeLog records
+// it so ChangeWatcher can deliver it to the listeners of the other instances sharing the database.
+class Change {
+    static final String BOOK_CHANGED = "book_changed";
+    static final String BOOK_REMOVED = "book_removed";
+    static final String CATALOG_CHANGED = "catalog_changed";
+    static final String BOOKS_SOLD = "books_sold";
+    static final String ORDER_CHANGED = "order_changed";
+    static final String USER_CHANGED = "user_changed";
+
+    final String type;
+    final int id; // Book or order id; 0 when the type has none
+    final String username; // Changed user
+    final Map<Integer, Integer> quantities; // Copies sold per book id
+    final Timestamp time; // Order datetime of a sale
+
+    Change(String type, int id, String username, Map<Integer, Integer> quantities, Timestamp time) {
+        this.type = type;
+        this.id = id;
+        this.username = username;
+        this.quantities = quantities;
+        this.time = time;
+    }
+}
@@ -0,0 +1,142 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// The change_log table: every change event committed by the GroupCommitWriter, tagged with the
+// instance that wrote it, so other instances on the same database file can replay it.
+// Rows are appended in the writing transaction, so a change is logged exactly when it commits.
+class ChangeLog {
+    static final String TABLE_NAME = "change_log";
+    // Identifies this process's rows, which were already delivered locally at commit
+    static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    private static volatile boolean tableFound;
+
+    // One logged change and where it sits in the log
+    static class Entry {
+        final long seq;
+        final boolean fromThisInstance;
+        final Change change;
+
+        private Entry(long seq, boolean fromThisInstance, Change change) {
+            this.seq = seq;
+            this.fromThisInstance = fromThisInstance;
+            this.change = change;
+        }
+    }
+
+    // Appends the changes with one batched insert on the caller's transaction.
+    // Skipped until the schema migration has created the table, e.g. on a database being seeded.
+    static void append(Connection connection, List<Change> changes) throws SQLException {
+        if (changes.isEmpty() || !tableExists(connection)) {
+            return;
+        }
+        String sql = "INSERT INTO " + TABLE_NAME + " (origin, type, entity_id, username, detail, event_time, logged_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (Change change : changes) {
+                stmt.setString(1, INSTANCE_ID);
+                stmt.setString(2, change.type);
+                stmt.setInt(3, change.id);
+                stmt.setString(4, change.username);
+                stmt.setString(5, change.quantities != null ? encode(change.quantities) : null);
+                if (change.time != null) {
+                    stmt.setLong(6, change.time.getTime());
+                } else {
+                    stmt.setNull(6, Types.INTEGER);
+                }
+                stmt.setLong(7, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // Every row after afterSeq, oldest first
+    static List<Entry> readSince(Connection connection, long afterSeq) throws SQLException {
+        String sql = "SELECT seq, origin, type, entity_id, username, detail, event_time FROM " + TABLE_NAME +
+                " WHERE seq > ? ORDER BY seq";
+        List<Entry> entries = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, afterSeq);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long eventTime = rs.getLong("event_time");
+                    Timestamp time = rs.wasNull() ? null : new Timestamp(eventTime);
+                    String detail = rs.getString("detail");
+                    Change change = new Change(rs.getString("type"), rs.getInt("entity_id"), rs.getString("username"),
+                            detail != null ? decode(detail) : null, time);
+                    entries.add(new Entry(rs.getLong("seq"), INSTANCE_ID.equals(rs.getString("origin")), change));
+                }
+            }
+        }
+        return entries;
+    }
+
+    // The last sequence number handed out, which survives pruning; 0 for a new log
+    static long lastSeq(Connection connection) throws SQLException {
+        String sql = "SELECT seq FROM sqlite_sequence WHERE name = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, TABLE_NAME);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            return 0; // sqlite_sequence only exists once an AUTOINCREMENT table has had a row
+        }
+    }
+
+    // Deletes rows logged before the cutoff; returns how many
+    static int prune(Connection connection, long loggedBeforeMillis) throws SQLException {
+        String sql = "DELETE FROM " + TABLE_NAME + " WHERE logged_at < ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, loggedBeforeMillis);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection connection) throws SQLException {
+        if (!tableFound) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + TABLE_NAME + "'")) {
+                tableFound = rs.next();
+            }
+        }
+        return tableFound;
+    }
+
+    // Quantities as "bookId:qty,bookId:qty"
+    private static String encode(Map<Integer, Integer> quantities) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return text.toString();
+    }
+
+    private static Map<Integer, Integer> decode(String text) {
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        if (!text.isEmpty()) {
+            for (String pair : text.split(",")) {
+                int colon = pair.indexOf(':');
+                quantities.put(Integer.parseInt(pair.substring(0, colon)), Integer.parseInt(pair.substring(colon + 1)));
+            }
+        }
+        return quantities;
+    }
+}
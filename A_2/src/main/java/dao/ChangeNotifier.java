@@ -0,0 +1,130 @@
+package dao;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Broadcasts data changes made through any DAO instance, so caches and models can stay current.
+// Changes committed by the GroupCommitWriter are also recorded in the change log, from which
+// ChangeWatcher delivers the changes made by other instances of the application.
+public class ChangeNotifier {
+    private static final List<BookChangeListener> bookListeners = new CopyOnWriteArrayList<>();
+    private static final List<SalesListener> salesListeners = new CopyOnWriteArrayList<>();
+    private static final List<OrderChangeListener> orderListeners = new CopyOnWriteArrayList<>();
+    private static final List<UserChangeListener> userListeners = new CopyOnWriteArrayList<>();
+    // Changes raised on a thread while its list is set wait there instead of being delivered
+    private static final ThreadLocal<List<Change>> deferred = new ThreadLocal<>();
+
+    public static void addBookListener(BookChangeListener listener) {
+        bookListeners.add(listener);
+    }
+
+    public static void removeBookListener(BookChangeListener listener) {
+        bookListeners.remove(listener);
+    }
+
+    public static void addSalesListener(SalesListener listener) {
+        salesListeners.add(listener);
+    }
+
+    public static void removeSalesListener(SalesListener listener) {
+        salesListeners.remove(listener);
+    }
+
+    public static void addOrderListener(OrderChangeListener listener) {
+        orderListeners.add(listener);
+    }
+
+    public static void removeOrderListener(OrderChangeListener listener) {
+        orderListeners.remove(listener);
+    }
+
+    public static void addUserListener(UserChangeListener listener) {
+        userListeners.add(listener);
+    }
+
+    public static void removeUserListener(UserChangeListener listener) {
+        userListeners.remove(listener);
+    }
+
+    public static void fireBookChanged(int bookId) {
+        dispatch(new Change(Change.BOOK_CHANGED, bookId, null, null, null));
+    }
+
+    public static void fireBookRemoved(int bookId) {
+        dispatch(new Change(Change.BOOK_REMOVED, bookId, null, null, null));
+    }
+
+    public static void fireCatalogChanged() {
+        dispatch(new Change(Change.CATALOG_CHANGED, 0, null, null, null));
+    }
+
+    public static void fireBooksSold(Map<Integer, Integer> quantities, Timestamp orderDatetime) {
+        dispatch(new Change(Change.BOOKS_SOLD, 0, null, quantities, orderDatetime));
+    }
+
+    public static void fireOrderChanged(int orderId) {
+        dispatch(new Change(Change.ORDER_CHANGED, orderId, null, null, null));
+    }
+
+    public static void fireUserChanged(String username) {
+        dispatch(new Change(Change.USER_CHANGED, 0, username, null, null));
+    }
+
+    // GroupCommitWriter collects the changes of a group until it commits, so listeners never
+    // re-read data that is not visible to other connections yet, or that is rolled back
+    static void deferTo(List<Change> changes) {
+        deferred.set(changes);
+    }
+
+    static void stopDeferring() {
+        deferred.remove();
+    }
+
+    private static void dispatch(Change change) {
+        List<Change> changes = deferred.get();
+        if (changes != null) {
+            changes.add(change);
+        } else {
+            deliver(change, false);
+        }
+    }
+
+    static void deliver(Change change, boolean fromOtherInstance) {
+        switch (change.type) {
+            case Change.BOOK_CHANGED:
+                for (BookChangeListener listener : bookListeners) {
+                    listener.bookChanged(change.id);
+                }
+                break;
+            case Change.BOOK_REMOVED:
+                for (BookChangeListener listener : bookListeners) {
+                    listener.bookRemoved(change.id);
+                }
+                break;
+            case Change.CATALOG_CHANGED:
+                for (BookChangeListener listener : bookListeners) {
+                    listener.catalogChanged();
+                }
+                break;
+            case Change.BOOKS_SOLD:
+                for (SalesListener listener : salesListeners) {
+                    listener.booksSold(change.quantities, change.time);
+                }
+                break;
+            case Change.ORDER_CHANGED:
+                for (OrderChangeListener listener : orderListeners) {
+                    listener.orderChanged(change.id, fromOtherInstance);
+                }
+                break;
+            case Change.USER_CHANGED:
+                for (UserChangeListener listener : userListeners) {
+                    listener.userChanged(change.username);
+                }
+                break;
+            default:
+                break; // Logged by a newer version of the application; nothing here listens for it
+        }
+    }
+}
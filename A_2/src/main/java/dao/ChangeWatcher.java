@@ -0,0 +1,110 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps this instance's caches and models current with writes made by other instances of the
+// application on the same database file. A dedicated connection polls PRAGMA data_version, which
+// only moves when another connection has committed, so an idle poll reads no table at all. When it
+// moves, the change_log rows written since the last poll by other instances are delivered to the
+// local listeners; this instance's own rows were already delivered when they committed.
+// If rows were pruned before they were read (e.g. after the machine slept), everything cached is
+// invalidated instead. Each poll also drops rows older than the retention period, now and then.
+public class ChangeWatcher {
+    private final ConnectionPool pool;
+    private final long pollMillis;
+    private final long retentionMillis;
+    private ScheduledExecutorService timer;
+    private Connection connection;
+    private long lastSeq;
+    private long lastDataVersion;
+    private long lastPruneMillis;
+
+    public ChangeWatcher(ConnectionPool pool, long pollMillis, long retentionMillis) {
+        this.pool = pool;
+        this.pollMillis = Math.max(10, pollMillis);
+        this.retentionMillis = retentionMillis;
+    }
+
+    // Starts polling from the current end of the log; does nothing if already started
+    public synchronized void start() throws SQLException {
+        if (timer != null) {
+            return;
+        }
+        connection = pool.openDedicated();
+        lastSeq = ChangeLog.lastSeq(connection);
+        lastDataVersion = dataVersion();
+        lastPruneMillis = System.currentTimeMillis();
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+            connection.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        timer = null;
+    }
+
+    private void poll() {
+        try {
+            long dataVersion = dataVersion();
+            if (dataVersion != lastDataVersion) {
+                lastDataVersion = dataVersion;
+                deliverNewChanges();
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastPruneMillis > retentionMillis / 2) {
+                lastPruneMillis = now;
+                Database.getWriter().submit(() -> ChangeLog.prune(Database.getConnection(), now - retentionMillis));
+            }
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace(); // Tried again at the next poll
+        }
+    }
+
+    private void deliverNewChanges() throws SQLException {
+        List<ChangeLog.Entry> entries = ChangeLog.readSince(connection, lastSeq);
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (entries.get(0).seq > lastSeq + 1) {
+            // Sequence numbers are never reused or skipped, so the missing rows were pruned unread
+            System.out.println("Missed database changes " + (lastSeq + 1) + " to " + (entries.get(0).seq - 1) + "; reloading caches");
+            ChangeNotifier.deliver(new Change(Change.CATALOG_CHANGED, 0, null, null, null), true);
+        }
+        for (ChangeLog.Entry entry : entries) {
+            if (!entry.fromThisInstance) {
+                ChangeNotifier.deliver(entry.change, true);
+            }
+            lastSeq = entry.seq;
+        }
+    }
+
+    private long dataVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
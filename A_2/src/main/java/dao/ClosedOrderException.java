@@ -0,0 +1,19 @@
+package dao;
+
+import java.sql.SQLException;
+
+// Thrown when cart changes reach an order that is no longer pending, e.g. one checked out meanwhile
+public class ClosedOrderException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final int orderId;
+
+    public ClosedOrderException(int orderId) {
+        super("Order " + orderId + " is no longer pending");
+        this.orderId = orderId;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+}
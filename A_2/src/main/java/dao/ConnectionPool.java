@@ -0,0 +1,285 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of physical JDBC connections. Callers receive a proxy whose close()
+// hands the physical connection back to the pool instead of closing it.
+// Each physical connection is configured by a ConnectionProfile when it is opened and keeps
+// its own StatementCache, so repeated SQL is parsed once per connection rather than per call.
+public class ConnectionPool {
+    private final String url;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long leakThresholdMillis;
+    private final ConnectionProfile profile;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+
+    // Pool metrics
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, int maxSize, long maxWaitMillis, long leakThresholdMillis,
+                          ConnectionProfile profile, int statementCacheSize) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.profile = profile;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, leakThresholdMillis / 2);
+        leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Borrows a connection, waiting at most maxWaitMillis for one to become free
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a database connection " + this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            Connection physical = takeIdleConnection();
+            if (physical == null) {
+                physical = open();
+            }
+            Lease lease = new Lease(physical);
+            Connection proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, lease);
+            leases.put(proxy, lease);
+            borrowed.incrementAndGet();
+            return proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Opens a connection with the pool's settings that the caller owns and closes; it does not
+    // count against maxSize, e.g. for a watcher that must keep one connection for its lifetime
+    public Connection openDedicated() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try {
+            profile.apply(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        return physical;
+    }
+
+    private Connection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try {
+            profile.apply(physical);
+        } catch (SQLException e) {
+            closeQuietly(physical);
+            throw e;
+        }
+        statementCaches.put(physical, new StatementCache(physical, statementCacheSize, statementHits, statementMisses));
+        created.incrementAndGet();
+        return physical;
+    }
+
+    // Returns the most recently used idle connection that is still open, or null
+    private Connection takeIdleConnection() {
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            try {
+                if (!connection.isClosed()) {
+                    return connection;
+                }
+            } catch (SQLException e) {
+                closeQuietly(connection);
+            }
+        }
+        return null;
+    }
+
+    private void release(Connection proxy, Lease lease) {
+        leases.remove(proxy);
+        Connection physical = lease.physical;
+        try {
+            // Never hand a connection with an open transaction to the next borrower
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (closed || physical.isClosed()) {
+                closeQuietly(physical);
+            } else {
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases.values()) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                leaks.incrementAndGet();
+                System.err.println("Possible connection leak: connection held by " + lease.threadName
+                        + " for " + (now - lease.borrowedAt) + " ms");
+                lease.borrowSite.printStackTrace();
+            }
+        }
+    }
+
+    // Closes all idle connections; borrowed connections are closed when they are returned
+    public void shutdown() {
+        closed = true;
+        leakDetector.shutdownNow();
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        StatementCache cache = statementCaches.remove(connection);
+        if (cache != null) {
+            cache.close();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getActiveCount() { return leases.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getWaitingCount() { return permits.getQueueLength(); }
+    public long getCreatedCount() { return created.get(); }
+    public long getBorrowedCount() { return borrowed.get(); }
+    public long getTimeoutCount() { return timeouts.get(); }
+    public long getLeakCount() { return leaks.get(); }
+    public long getStatementCacheHitCount() { return statementHits.get(); }
+    public long getStatementCacheMissCount() { return statementMisses.get(); }
+    public ConnectionProfile getProfile() { return profile; }
+
+    public double getAverageWaitMillis() {
+        long count = borrowed.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", waiting=" + getWaitingCount() +
+                ", max=" + maxSize +
+                ", created=" + getCreatedCount() +
+                ", borrowed=" + getBorrowedCount() +
+                ", timeouts=" + getTimeoutCount() +
+                ", leaks=" + getLeakCount() +
+                ", statementHits=" + getStatementCacheHitCount() +
+                ", statementMisses=" + getStatementCacheMissCount() +
+                '}';
+    }
+
+    // Tracks one borrowed connection and intercepts close() on its proxy
+    private class Lease implements InvocationHandler {
+        private final Connection physical;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable borrowSite = new Throwable("Connection borrowed here");
+        private volatile boolean returned;
+        private volatile boolean reported;
+
+        private Lease(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release((Connection) proxy, this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                case "prepareStatement":
+                    // Only the plain and generated-keys forms are cached; the DAOs use nothing else
+                    if (!returned && statementCacheSize > 0
+                            && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+                        int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        return statementCaches.get(physical).prepare((Connection) proxy, (String) args[0], autoGeneratedKeys);
+                    }
+                    return invokePhysical(method, args);
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// SQLite settings applied to every physical connection the pool opens.
+// WAL lets catalog reads continue while a checkout is writing; NORMAL synchronous is
+// crash-safe in WAL mode and avoids an fsync on every commit.
+public class ConnectionProfile {
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSizeKb;
+    private final long mmapSizeBytes;
+    private final int busyTimeoutMillis;
+
+    public ConnectionProfile(String journalMode, String synchronous, int cacheSizeKb, long mmapSizeBytes, int busyTimeoutMillis) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    // Defaults can be overridden with -Ddb.* system properties
+    public static ConnectionProfile fromSystemProperties() {
+        return new ConnectionProfile(
+                System.getProperty("db.journalMode", "WAL"),
+                System.getProperty("db.synchronous", "NORMAL"),
+                Integer.getInteger("db.cacheSizeKb", 16 * 1024),
+                Long.getLong("db.mmapSizeBytes", 64L * 1024 * 1024),
+                Integer.getInteger("db.busyTimeoutMillis", 5000));
+    }
+
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // busy_timeout goes first so the journal mode switch can wait for other connections
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            // A negative cache_size is a size in KiB rather than a page count
+            stmt.execute("PRAGMA cache_size = " + (-cacheSizeKb));
+            stmt.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+        }
+    }
+
+    public String getJournalMode() { return journalMode; }
+    public String getSynchronous() { return synchronous; }
+    public int getCacheSizeKb() { return cacheSizeKb; }
+    public long getMmapSizeBytes() { return mmapSizeBytes; }
+    public int getBusyTimeoutMillis() { return busyTimeoutMillis; }
+
+    @Override
+    public String toString() {
+        return "ConnectionProfile{" +
+                "journalMode=" + journalMode +
+                ", synchronous=" + synchronous +
+                ", cacheSizeKb=" + cacheSizeKb +
+                ", mmapSizeBytes=" + mmapSizeBytes +
+                ", busyTimeoutMillis=" + busyTimeoutMillis +
+                '}';
+    }
+}
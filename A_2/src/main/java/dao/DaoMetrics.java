@@ -0,0 +1,164 @@
+package dao;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Registry of per-method DAO statistics. instrument() wraps a DAO in a proxy that times every
+// call and records its row count and any exception. Each method is published over JMX as
+// dao:type=DaoMetrics,dao=<name>,method=<method> and appended to a CSV file at a fixed interval.
+public class DaoMetrics {
+    // CSV location and interval can be overridden with -Ddao.metrics.* system properties; 0 disables the dump
+    private static final Path CSV_FILE = Paths.get(System.getProperty("dao.metrics.csv", "dao-metrics.csv"));
+    private static final long DUMP_SECONDS = Long.getLong("dao.metrics.dumpSeconds", 60);
+
+    private static final Map<String, MethodStats> STATS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService DUMPER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dao-metrics-dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        if (DUMP_SECONDS > 0) {
+            DUMPER.scheduleAtFixedRate(DaoMetrics::dumpQuietly, DUMP_SECONDS, DUMP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Returns a proxy of the DAO that records statistics under the given name
+    public static <T> T instrument(Class<T> daoInterface, T dao, String name) {
+        return daoInterface.cast(Proxy.newProxyInstance(daoInterface.getClassLoader(),
+                new Class<?>[] { daoInterface }, new Timer(dao, name)));
+    }
+
+    public static MethodStats getStats(String dao, String method) {
+        return STATS.computeIfAbsent(dao + "." + method, key -> register(new MethodStats(dao, method)));
+    }
+
+    // All statistics, sorted by DAO and method name
+    public static List<MethodStats> getAllStats() {
+        List<MethodStats> all = new ArrayList<>(STATS.values());
+        all.sort(Comparator.comparing(MethodStats::getDao).thenComparing(MethodStats::getMethod));
+        return all;
+    }
+
+    private static MethodStats register(MethodStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("dao:type=DaoMetrics,dao=" + stats.getDao() + ",method=" + stats.getMethod());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        return stats;
+    }
+
+    // Appends one row per method with calls to the CSV file, writing the header for a new file
+    public static void dump() throws IOException {
+        List<MethodStats> all = getAllStats();
+        boolean newFile = !Files.exists(CSV_FILE);
+        try (BufferedWriter writer = Files.newBufferedWriter(CSV_FILE, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newFile) {
+                writer.write("Timestamp,DAO,Method,Calls,Errors,Rows,Mean ms,P50 ms,P95 ms,P99 ms,Max ms\n");
+            }
+            String timestamp = LocalDateTime.now().toString();
+            for (MethodStats stats : all) {
+                if (stats.getCalls() == 0) {
+                    continue;
+                }
+                writer.write(String.format("%s,%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                        timestamp, stats.getDao(), stats.getMethod(), stats.getCalls(), stats.getErrors(),
+                        stats.getRows(), stats.getMeanMillis(), stats.getP50Millis(), stats.getP95Millis(),
+                        stats.getP99Millis(), stats.getMaxMillis()));
+            }
+        }
+    }
+
+    private static void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Writes a final dump and stops the dump thread
+    public static void shutdown() {
+        DUMPER.shutdownNow();
+        if (DUMP_SECONDS > 0) {
+            dumpQuietly();
+        }
+    }
+
+    // Times each call on the wrapped DAO
+    private static class Timer implements InvocationHandler {
+        private final Object target;
+        private final String name;
+
+        private Timer(Object target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return name + "[" + target + "]";
+                }
+            }
+
+            MethodStats stats = getStats(name, method.getName());
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(target, args);
+                stats.record(System.nanoTime() - start, rowCount(result), null);
+                return result;
+            } catch (InvocationTargetException e) {
+                stats.record(System.nanoTime() - start, 0, e.getCause());
+                throw e.getCause();
+            }
+        }
+
+        private static long rowCount(Object result) {
+            if (result instanceof Collection) {
+                return ((Collection<?>) result).size();
+            }
+            if (result instanceof Map) {
+                return ((Map<?, ?>) result).size();
+            }
+            return result == null ? 0 : 1;
+        }
+    }
+}
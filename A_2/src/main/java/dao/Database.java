@@ -1,13 +1,51 @@
 package dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class Database {
-	private static final String DB_URL = "jdbc:sqlite:application.db";
+	// Another database file can be selected with -Ddb.url, e.g. for benchmarks
+	private static final String DB_URL = System.getProperty("db.url", "jdbc:sqlite:application.db");
 
+	// Pool limits can be overridden with -Ddb.pool.* system properties and SQLite settings with -Ddb.*
+	private static final ConnectionPool POOL = new ConnectionPool(DB_URL,
+			Integer.getInteger("db.pool.maxSize", 8),
+			Long.getLong("db.pool.maxWaitMillis", 5000),
+			Long.getLong("db.pool.leakThresholdMillis", 30000),
+			ConnectionProfile.fromSystemProperties(),
+			Integer.getInteger("db.pool.statementCacheSize", 64));
+
+	// All writes go through one thread that commits them in groups of at most -Ddb.write.maxBatch operations
+	private static final GroupCommitWriter WRITER = new GroupCommitWriter(POOL, Integer.getInteger("db.write.maxBatch", 64));
+	// Picks up changes made by other instances; poll interval and change log retention with -Ddb.changes.*
+	private static final ChangeWatcher WATCHER = new ChangeWatcher(POOL,
+			Long.getLong("db.changes.pollMillis", 1000),
+			Long.getLong("db.changes.retentionMillis", 10 * 60 * 1000));
+
+	// Borrows a connection from the pool; closing it returns it to the pool.
+	// Inside a write operation this is the writer's shared transaction instead.
 	public static Connection getConnection() throws SQLException {
-		return DriverManager.getConnection(DB_URL);
+		Connection groupConnection = WRITER.currentConnection();
+		return groupConnection != null ? groupConnection : POOL.borrow();
+	}
+
+	public static ConnectionPool getPool() {
+		return POOL;
+	}
+
+	public static GroupCommitWriter getWriter() {
+		return WRITER;
+	}
+
+	// Starts delivering other instances' changes to this one's listeners; the schema must be up to date
+	public static void watchForChanges() throws SQLException {
+		WATCHER.start();
+	}
+
+	// Finishes queued writes before closing the pool
+	public static void shutdown() {
+		WATCHER.stop();
+		WRITER.shutdown();
+		POOL.shutdown();
 	}
 }
@@ -0,0 +1,352 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs every database write on one thread and commits them in groups. SQLite has a single
+// writer, so writes from several threads would only wait on its lock (or fail with SQLITE_BUSY);
+// here they queue instead, and whatever has queued while the previous group was committing,
+// up to maxBatch operations, goes into the next transaction and shares its commit.
+//
+// While a group runs, Database.getConnection() on the writer thread returns the group's
+// connection, so the DAOs need no changes. Their own transactions become savepoints: commit()
+// releases one and rollback() undoes only that DAO call's work, so an operation that fails
+// leaves the others in its group, and its own earlier statements, as they would have been
+// with separate commits. Change events are recorded in the change log with the group, delivered
+// to listeners once it has committed, and each caller's future completes only then.
+// If the group itself fails to commit, everything in it is rolled back, including work whose
+// DAO call had already returned; operations that changed in-memory state alongside their writes
+// register whenGroupEnds() hooks to keep or undo it once the outcome is known.
+public class GroupCommitWriter {
+    private final ConnectionPool pool;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Operation<?>> queue = new LinkedBlockingQueue<>();
+    private final Operation<Void> stop = new Operation<>(null);
+    private final ThreadLocal<Connection> groupConnection = new ThreadLocal<>();
+    // Hooks registered by the running group's operations; only touched on the writer thread
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private final List<Runnable> afterRollback = new ArrayList<>();
+    private final Thread thread;
+    private boolean closed;
+
+    // Writer metrics
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong failedGroups = new AtomicLong();
+    private volatile int largestGroup;
+
+    // A unit of work run on the writer thread
+    @FunctionalInterface
+    public interface WriteOperation<T> {
+        T run() throws Exception;
+    }
+
+    private static class Operation<T> {
+        private final WriteOperation<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable error;
+
+        private Operation(WriteOperation<T> work) {
+            this.work = work;
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    public GroupCommitWriter(ConnectionPool pool, int maxBatch) {
+        this.pool = pool;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.thread = new Thread(this::runLoop, "db-write");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Queues the operation; the future completes once the transaction it ran in has committed
+    public <T> CompletableFuture<T> submit(WriteOperation<T> work) {
+        Operation<T> operation = new Operation<>(work);
+        synchronized (this) {
+            if (closed) {
+                operation.future.completeExceptionally(new SQLException("The database writer has been shut down"));
+                return operation.future;
+            }
+            queue.add(operation);
+        }
+        return operation.future;
+    }
+
+    // Runs the operation on the writer and waits for its commit; already on the writer, it runs directly
+    public <T> T execute(WriteOperation<T> work) throws Exception {
+        if (Thread.currentThread() == thread) {
+            return work.run();
+        }
+        try {
+            return submit(work).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // Runs onCommit once the current group has committed, or onRollback if it is rolled back
+    // (either may be null). Outside a group the caller's own transaction has already committed,
+    // so onCommit runs straight away.
+    public void whenGroupEnds(Runnable onCommit, Runnable onRollback) {
+        if (currentConnection() == null) {
+            if (onCommit != null) {
+                onCommit.run();
+            }
+            return;
+        }
+        if (onCommit != null) {
+            afterCommit.add(onCommit);
+        }
+        if (onRollback != null) {
+            afterRollback.add(onRollback);
+        }
+    }
+
+    // The group's connection when called from inside a write operation, otherwise null
+    Connection currentConnection() {
+        return groupConnection.get();
+    }
+
+    // Lets queued operations finish, then stops the writer thread
+    public void shutdown() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(stop);
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runLoop() {
+        List<Operation<?>> group = new ArrayList<>();
+        while (true) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(group, maxBatch - 1);
+            boolean stopping = group.remove(stop);
+            if (!group.isEmpty()) {
+                runGroup(group);
+            }
+            group.clear();
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private void runGroup(List<Operation<?>> group) {
+        List<Change> changes = new ArrayList<>();
+        List<Runnable> hooks = afterCommit;
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            connection.setAutoCommit(false);
+            Transaction transaction = new Transaction(connection);
+            groupConnection.set((Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, transaction));
+            ChangeNotifier.deferTo(changes);
+
+            for (Operation<?> operation : group) {
+                run(operation);
+                transaction.endOperation();
+            }
+            ChangeLog.append(connection, changes);
+            connection.commit();
+        } catch (Throwable e) {
+            // The transaction is lost, so nothing in the group happened
+            failedGroups.incrementAndGet();
+            changes.clear();
+            hooks = afterRollback;
+            for (Operation<?> operation : group) {
+                operation.error = e;
+            }
+            rollbackQuietly(connection);
+        } finally {
+            ChangeNotifier.stopDeferring();
+            groupConnection.remove();
+            closeQuietly(connection);
+        }
+
+        groups.incrementAndGet();
+        operations.addAndGet(group.size());
+        largestGroup = Math.max(largestGroup, group.size());
+
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        afterCommit.clear();
+        afterRollback.clear();
+
+        // Listeners see the changes before the callers' futures complete, as they did with inline commits
+        for (Change change : changes) {
+            try {
+                ChangeNotifier.deliver(change, false);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        for (Operation<?> operation : group) {
+            operation.complete();
+        }
+    }
+
+    private static <T> void run(Operation<T> operation) {
+        try {
+            operation.result = operation.work.run();
+        } catch (Throwable e) {
+            operation.error = e;
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close(); // The pool restores auto-commit
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public int getMaxBatch() { return maxBatch; }
+    public int getQueueLength() { return queue.size(); }
+    public long getGroupCount() { return groups.get(); }
+    public long getOperationCount() { return operations.get(); }
+    public long getFailedGroupCount() { return failedGroups.get(); }
+    public int getLargestGroup() { return largestGroup; }
+
+    public double getAverageGroupSize() {
+        long count = groups.get();
+        return count == 0 ? 0 : (double) operations.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitWriter{" +
+                "groups=" + getGroupCount() +
+                ", operations=" + getOperationCount() +
+                ", averageGroup=" + String.format("%.1f", getAverageGroupSize()) +
+                ", largestGroup=" + getLargestGroup() +
+                ", failedGroups=" + getFailedGroupCount() +
+                ", queued=" + getQueueLength() +
+                '}';
+    }
+
+    // The connection the DAOs see during a group. Closing it does nothing, and the JDBC
+    // transaction calls a DAO makes map onto a savepoint inside the group's transaction.
+    private static class Transaction implements InvocationHandler {
+        private final Connection connection;
+        private Savepoint savepoint; // Open while the DAO has auto-commit switched off
+
+        private Transaction(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    return null;
+                case "isClosed":
+                    return false;
+                case "getAutoCommit":
+                    return savepoint == null;
+                case "setAutoCommit":
+                    if ((Boolean) args[0]) {
+                        // Like JDBC, leaving manual commit keeps the work done so far
+                        if (savepoint != null) {
+                            connection.releaseSavepoint(savepoint);
+                            savepoint = null;
+                        }
+                    } else if (savepoint == null) {
+                        savepoint = connection.setSavepoint();
+                    }
+                    return null;
+                case "commit":
+                    if (savepoint == null) {
+                        throw new SQLException("commit() called in auto-commit mode");
+                    }
+                    connection.releaseSavepoint(savepoint);
+                    savepoint = connection.setSavepoint();
+                    return null;
+                case "rollback":
+                    if (args == null || args.length == 0) {
+                        if (savepoint == null) {
+                            throw new SQLException("rollback() called in auto-commit mode");
+                        }
+                        connection.rollback(savepoint);
+                        return null;
+                    }
+                    return invokeConnection(method, args);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "GroupCommitConnection[" + connection + "]";
+                default:
+                    return invokeConnection(method, args);
+            }
+        }
+
+        // Undoes whatever an operation left uncommitted, as returning its connection to the pool would have
+        private void endOperation() throws SQLException {
+            if (savepoint != null) {
+                connection.rollback(savepoint);
+                connection.releaseSavepoint(savepoint);
+                savepoint = null;
+            }
+        }
+
+        private Object invokeConnection(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
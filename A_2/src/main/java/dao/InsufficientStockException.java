@@ -0,0 +1,21 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+// Thrown when an order cannot be completed because some books do not have enough copies left
+public class InsufficientStockException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] bookIds;
+
+    public InsufficientStockException(List<Integer> bookIds) {
+        super("Not enough copies in stock for book ID(s) " + bookIds);
+        this.bookIds = bookIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public List<Integer> getBookIds() {
+        return Arrays.stream(bookIds).boxed().toList();
+    }
+}
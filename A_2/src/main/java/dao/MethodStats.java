@@ -0,0 +1,122 @@
+package dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Call, row and error counters plus a latency histogram for one DAO method.
+// Latencies are kept in log-linear microsecond buckets (8 per power of two), so percentiles
+// are accurate to within about 12% while recording stays lock-free and fixed in size.
+public class MethodStats implements MethodStatsMBean {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String dao;
+    private final String method;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile String lastError;
+
+    public MethodStats(String dao, String method) {
+        this.dao = dao;
+        this.method = method;
+    }
+
+    public void record(long nanos, long rowCount, Throwable error) {
+        long micros = nanos / 1000;
+        calls.increment();
+        rows.add(rowCount);
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+        histogram.incrementAndGet(bucketOf(micros));
+        if (error != null) {
+            errors.increment();
+            lastError = error.getClass().getSimpleName() + ": " + error.getMessage();
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest latency in microseconds that falls into the given bucket
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+
+    public double getPercentileMillis(double percent) {
+        long count = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percent / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMicros.get() / 1000.0;
+    }
+
+    public String getDao() { return dao; }
+    public String getMethod() { return method; }
+
+    @Override public long getCalls() { return calls.sum(); }
+    @Override public long getErrors() { return errors.sum(); }
+    @Override public long getRows() { return rows.sum(); }
+    @Override public String getLastError() { return lastError; }
+    @Override public double getP50Millis() { return getPercentileMillis(50); }
+    @Override public double getP95Millis() { return getPercentileMillis(95); }
+    @Override public double getP99Millis() { return getPercentileMillis(99); }
+    @Override public double getMaxMillis() { return maxMicros.get() / 1000.0; }
+
+    @Override
+    public double getMeanMillis() {
+        long count = calls.sum();
+        return count == 0 ? 0 : totalMicros.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        totalMicros.reset();
+        maxMicros.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        lastError = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s{calls=%d, errors=%d, rows=%d, mean=%.2fms, p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms}",
+                dao, method, getCalls(), getErrors(), getRows(), getMeanMillis(),
+                getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,15 @@
+package dao;
+
+// JMX view of one instrumented DAO method; latencies are in milliseconds
+public interface MethodStatsMBean {
+    long getCalls();
+    long getErrors();
+    long getRows();
+    String getLastError();
+    double getMeanMillis();
+    double getP50Millis();
+    double getP95Millis();
+    double getP99Millis();
+    double getMaxMillis();
+    void reset();
+}
@@ -0,0 +1,7 @@
+package dao;
+
+// Notified after an order or its lines were written; fromOtherInstance is true for writes
+// made by another instance of the application on the same database
+public interface OrderChangeListener {
+    void orderChanged(int orderId, boolean fromOtherInstance);
+}
@@ -1,19 +1,35 @@
 package dao;
 
 import model.Order;
+import model.OrderDetail;
+import model.OrderLineStore;
 import model.User;
 
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 public interface OrderDao {
-    void setup() throws SQLException; 
+    void setup(Connection connection) throws SQLException; 
     void createOrder(Order order) throws SQLException; 
     List<Order> getAllOrders() throws SQLException; 
     void updateOrderStatus(int orderId, String status) throws SQLException; 
     List<Order> getOrdersByUser(String username) throws SQLException; 
+	Order findPendingOrder(String username) throws SQLException;
 	List<Order> getCompletedOrders(String username) throws SQLException;
+	OrderLineStore loadCompletedOrderLines(String username) throws SQLException;
 	void updateOrder(Order order) throws SQLException;
+	void checkout(int orderId) throws SQLException;
 	void removeOrderDetail(int bookid, int orderid) throws SQLException;
+	void removeCartLine(int orderId, int bookId, double finalPrice) throws SQLException;
+	void saveCartChanges(Order order, double finalPrice, List<OrderDetail> newLines, List<OrderDetail> changedLines) throws SQLException;
+	void createOrderDetails(int orderId, List<OrderDetail> orderDetails) throws SQLException;
+	void updateOrderDetails(int orderId, List<OrderDetail> orderDetails) throws SQLException;
 	List<User> getAllUsers() throws SQLException;
+	int countCompletedOrderLines(String username) throws SQLException;
+	Map<LocalDate, Map<Integer, Integer>> getDailyBookSales(LocalDate since) throws SQLException;
+	void streamCompletedOrderLines(String username, OrderLineHandler handler) throws SQLException, IOException;
 }
@@ -3,11 +3,21 @@ package dao;
 import model.Book;
 import model.Order;
 import model.OrderDetail;
+import model.OrderLine;
+import model.OrderLineStore;
+import model.StockChange;
 import model.User;
 
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
 import java.util.List;
+import java.util.Map;
 
 public class OrderDaoImpl implements OrderDao {
     private final String MASTER_TABLE_NAME = "orders";
@@ -16,9 +26,8 @@ public class OrderDaoImpl implements OrderDao {
     public OrderDaoImpl() {}
 
     @Override
-    public void setup() throws SQLException {
-        try (Connection connection = Database.getConnection();
-             Statement stmt = connection.createStatement()) {
+    public void setup(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
 
             // Create master order table
             String masterSql = "CREATE TABLE IF NOT EXISTS " + MASTER_TABLE_NAME + " (" +
@@ -58,16 +67,25 @@ public class OrderDaoImpl implements OrderDao {
                 if (generatedKeys.next()) {
                     int orderId = generatedKeys.getInt(1);
                     order.setOrderId(orderId); // Set the order ID in the order object
-                    createOrderDetails(orderId, order.getOrderDetails());
+                    createOrderDetails(connection, orderId, order.getOrderDetails());
                 }
             }
         }
+        ChangeNotifier.fireOrderChanged(order.getOrderId());
     }
 
+    @Override
     public void createOrderDetails(int orderId, List<OrderDetail> orderDetails) throws SQLException {
+        try (Connection connection = Database.getConnection()) {
+            createOrderDetails(connection, orderId, orderDetails);
+        }
+        ChangeNotifier.fireOrderChanged(orderId);
+    }
+
+    // Inserts the detail rows on a connection the caller already holds
+    private void createOrderDetails(Connection connection, int orderId, List<OrderDetail> orderDetails) throws SQLException {
         String detailSql = "INSERT INTO " + DETAIL_TABLE_NAME + " (order_id, book_id, qty, total_price) VALUES (?, ?, ?, ?)";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement detailStmt = connection.prepareStatement(detailSql)) {
+        try (PreparedStatement detailStmt = connection.prepareStatement(detailSql)) {
 
             for (OrderDetail detail : orderDetails) {
                 detailStmt.setInt(1, orderId);
@@ -80,50 +98,108 @@ public class OrderDaoImpl implements OrderDao {
         }
     }
 
+    // Writes a batch of buffered cart changes in one transaction: the order row if it is new,
+    // the new and changed lines, and the order's current total. Throws ClosedOrderException,
+    // writing nothing, if the order has been checked out or otherwise left the pending state.
     @Override
-    public List<Order> getAllOrders() throws SQLException {
-        List<Order> orders = new ArrayList<>();
-        String sql = "SELECT * FROM " + MASTER_TABLE_NAME;
-        try (Connection connection = Database.getConnection();
-             Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    public void saveCartChanges(Order order, double finalPrice, List<OrderDetail> newLines, List<OrderDetail> changedLines) throws SQLException {
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            boolean newOrder = order.getOrderId() == 0;
+            try {
+                if (newOrder) {
+                    String masterSql = "INSERT INTO " + MASTER_TABLE_NAME + " (username, final_price, status, order_datetime) VALUES (?, ?, ?, ?)";
+                    try (PreparedStatement masterStmt = connection.prepareStatement(masterSql, Statement.RETURN_GENERATED_KEYS)) {
+                        masterStmt.setString(1, order.getUsername());
+                        masterStmt.setDouble(2, finalPrice);
+                        masterStmt.setString(3, order.getStatus());
+                        masterStmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                        masterStmt.executeUpdate();
+                        try (ResultSet generatedKeys = masterStmt.getGeneratedKeys()) {
+                            if (!generatedKeys.next()) {
+                                throw new SQLException("No order ID was generated for " + order.getUsername());
+                            }
+                            order.setOrderId(generatedKeys.getInt(1));
+                        }
+                    }
+                } else {
+                    // Only a cart still pending takes changes; a checked-out order keeps its lines and total
+                    String priceSql = "UPDATE " + MASTER_TABLE_NAME + " SET final_price = ? WHERE order_id = ? AND status = 'pending'";
+                    try (PreparedStatement priceStmt = connection.prepareStatement(priceSql)) {
+                        priceStmt.setDouble(1, finalPrice);
+                        priceStmt.setInt(2, order.getOrderId());
+                        if (priceStmt.executeUpdate() == 0) {
+                            throw new ClosedOrderException(order.getOrderId());
+                        }
+                    }
+                }
 
-            while (rs.next()) {
-                int orderId = rs.getInt("order_id");
-                String username = rs.getString("username");
-                double finalPrice = rs.getDouble("final_price");
-                String status = rs.getString("status");
-                Timestamp orderDatetime = rs.getTimestamp("order_datetime"); // Fetch the order_datetime
-
-                List<OrderDetail> orderDetails = getOrderDetails(orderId);
-                Order order = new Order(username, finalPrice, status, orderDatetime, orderDetails);
-                order.setOrderId(orderId);
-                order.setOrderDatetime(orderDatetime); // Set the order datetime in the order object
-                orders.add(order);
+                createOrderDetails(connection, order.getOrderId(), newLines);
+                updateOrderDetails(connection, order.getOrderId(), changedLines);
+                connection.commit();
+                if (newOrder) {
+                    // Inside the writer's group the row only lasts if the whole group commits too
+                    Database.getWriter().whenGroupEnds(null, () -> order.setOrderId(0));
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                if (newOrder) {
+                    order.setOrderId(0); // The inserted order row was rolled back too
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         }
-        return orders;
+        ChangeNotifier.fireOrderChanged(order.getOrderId());
     }
 
-    private List<OrderDetail> getOrderDetails(int orderId) throws SQLException {
-        List<OrderDetail> orderDetails = new ArrayList<>();
-        String sql = "SELECT * FROM " + DETAIL_TABLE_NAME + " WHERE order_id = ?";
+    @Override
+    public List<Order> getAllOrders() throws SQLException {
+        return loadOrders("", new Object[0]);
+    }
+
+    // Loads orders matching the given WHERE clause together with their detail rows
+    // in a single LEFT JOIN pass, grouping the rows into Order objects in memory
+    private List<Order> loadOrders(String whereClause, Object[] params) throws SQLException {
+        String sql = "SELECT o.order_id, o.username, o.final_price, o.status, o.order_datetime, " +
+                "d.book_id, d.qty, d.total_price " +
+                "FROM " + MASTER_TABLE_NAME + " o " +
+                "LEFT JOIN " + DETAIL_TABLE_NAME + " d ON d.order_id = o.order_id " +
+                whereClause + " ORDER BY o.order_id";
+        Map<Integer, Order> orders = new LinkedHashMap<>();
         try (Connection connection = Database.getConnection();
              PreparedStatement pstmt = connection.prepareStatement(sql)) {
 
-            pstmt.setInt(1, orderId);
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
+                    int orderId = rs.getInt("order_id");
+                    Order order = orders.get(orderId);
+                    if (order == null) {
+                        String username = rs.getString("username");
+                        double finalPrice = rs.getDouble("final_price");
+                        String status = rs.getString("status");
+                        Timestamp orderDatetime = rs.getTimestamp("order_datetime"); // Fetch the order_datetime
+
+                        order = new Order(username, finalPrice, status, orderDatetime, new ArrayList<>());
+                        order.setOrderId(orderId);
+                        orders.put(orderId, order);
+                    }
+
+                    // book_id is NULL when the order has no detail rows yet
                     int bookId = rs.getInt("book_id");
-                    int qty = rs.getInt("qty");
-                    double totalPrice = rs.getDouble("total_price");
-
-                    OrderDetail detail = new OrderDetail(orderId, bookId, qty, totalPrice);
-                    orderDetails.add(detail);
+                    if (!rs.wasNull()) {
+                        int qty = rs.getInt("qty");
+                        double totalPrice = rs.getDouble("total_price");
+                        order.getOrderDetails().add(new OrderDetail(orderId, bookId, qty, totalPrice));
+                    }
                 }
             }
         }
-        return orderDetails;
+        return new ArrayList<>(orders.values());
     }
 
     @Override
@@ -137,36 +213,29 @@ public class OrderDaoImpl implements OrderDao {
             pstmt.setInt(2, orderId);
             pstmt.executeUpdate();
         }
+        ChangeNotifier.fireOrderChanged(orderId);
     }
 
     @Override
     public List<Order> getOrdersByUser(String username) throws SQLException {
-        List<Order> orders = new ArrayList<>();
-        String sql = "SELECT * FROM " + MASTER_TABLE_NAME + " WHERE username = ?";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        return loadOrders("WHERE o.username = ?", new Object[] { username });
+    }
 
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    int orderId = rs.getInt("order_id");
-                    double finalPrice = rs.getDouble("final_price");
-                    String status = rs.getString("status");
-                    Timestamp orderDatetime = rs.getTimestamp("order_datetime"); // Fetch the order_datetime
-
-                    List<OrderDetail> orderDetails = getOrderDetails(orderId);
-                    Order order = new Order(username, finalPrice, status, orderDatetime, orderDetails);
-                    order.setOrderId(orderId);
-                    order.setOrderDatetime(orderDatetime); // Set the order datetime in the order object
-                    orders.add(order);
-                }
-            }
-        }
-        return orders;
+    // The user's open cart, or null; served by idx_orders_username_status without reading their history
+    @Override
+    public Order findPendingOrder(String username) throws SQLException {
+        List<Order> orders = loadOrders("WHERE o.username = ? AND o.status = 'pending'", new Object[] { username });
+        return orders.isEmpty() ? null : orders.get(0);
     }
 
     @Override
     public void updateOrder(Order order) throws SQLException {
+        // Completing an order moves stock, so it goes through the checkout transaction
+        if ("completed".equalsIgnoreCase(order.getStatus())) {
+            runCheckout(order.getOrderId(), order.getFinalPrice());
+            return;
+        }
+
         String sql = "UPDATE " + MASTER_TABLE_NAME + " SET final_price = ?, status = ? WHERE order_id = ?";
         try (Connection connection = Database.getConnection();
              PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -176,15 +245,116 @@ public class OrderDaoImpl implements OrderDao {
             pstmt.setString(2, order.getStatus());
             pstmt.setInt(3, order.getOrderId());
             pstmt.executeUpdate();
+        }
+        ChangeNotifier.fireOrderChanged(order.getOrderId());
+    }
+
+    @Override
+    public void checkout(int orderId) throws SQLException {
+        runCheckout(orderId, null);
+    }
 
-            // Only update book physical copies if the order is completed
-            if ("completed".equalsIgnoreCase(order.getStatus())) {
-                List<OrderDetail> orderDetails = getOrderDetails(order.getOrderId());
-                for (OrderDetail detail : orderDetails) {
-                    updateBookPhysicalCopies(detail.getBookId(), detail.getQuantity());
+    // Completes the order in a single transaction: marks it completed (optionally
+    // setting its final price), checks stock for every line and moves the copies
+    // from physical_copies to sold_copies with one batched conditional UPDATE.
+    // Nothing is written unless every line has enough stock.
+    private void runCheckout(int orderId, Double finalPrice) throws SQLException {
+        List<Integer> bookIds = new ArrayList<>();
+        Map<Integer, Integer> quantities = new HashMap<>();
+        Timestamp orderDatetime = null;
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                // Claim the order first; this also takes SQLite's write lock for the transaction
+                String statusSql = "UPDATE " + MASTER_TABLE_NAME + " SET status = 'completed'" +
+                        (finalPrice != null ? ", final_price = ?" : "") +
+                        " WHERE order_id = ? AND status <> 'completed'";
+                try (PreparedStatement pstmt = connection.prepareStatement(statusSql)) {
+                    int index = 1;
+                    if (finalPrice != null) {
+                        pstmt.setDouble(index++, finalPrice);
+                    }
+                    pstmt.setInt(index, orderId);
+                    if (pstmt.executeUpdate() == 0) {
+                        throw new SQLException("Order " + orderId + " does not exist or is already completed");
+                    }
+                }
+
+                String datetimeSql = "SELECT order_datetime FROM " + MASTER_TABLE_NAME + " WHERE order_id = ?";
+                try (PreparedStatement pstmt = connection.prepareStatement(datetimeSql)) {
+                    pstmt.setInt(1, orderId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            orderDatetime = rs.getTimestamp("order_datetime");
+                        }
+                    }
+                }
+
+                // Quantities per book for this order
+                List<int[]> lines = new ArrayList<>();
+                String linesSql = "SELECT book_id, SUM(qty) AS qty FROM " + DETAIL_TABLE_NAME +
+                        " WHERE order_id = ? GROUP BY book_id";
+                try (PreparedStatement pstmt = connection.prepareStatement(linesSql)) {
+                    pstmt.setInt(1, orderId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            lines.add(new int[] { rs.getInt("book_id"), rs.getInt("qty") });
+                        }
+                    }
+                }
+
+                // The stock check is part of the UPDATE, so two checkouts can never oversell
+                List<StockChange> sales = new ArrayList<>();
+                for (int[] line : lines) {
+                    sales.add(StockChange.sell(line[0], line[1]));
+                }
+                BookDaoImpl.applyStockChanges(connection, sales);
+                for (int[] line : lines) {
+                    bookIds.add(line[0]);
+                    quantities.put(line[0], line[1]);
                 }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        for (int bookId : bookIds) {
+            ChangeNotifier.fireBookChanged(bookId);
+        }
+        ChangeNotifier.fireBooksSold(quantities, orderDatetime);
+        ChangeNotifier.fireOrderChanged(orderId);
+    }
+
+    // Deletes one cart line and stores the order's new total in a single transaction
+    @Override
+    public void removeCartLine(int orderId, int bookId, double finalPrice) throws SQLException {
+        String deleteSql = "DELETE FROM " + DETAIL_TABLE_NAME + " WHERE order_id = ? AND book_id = ?";
+        String priceSql = "UPDATE " + MASTER_TABLE_NAME + " SET final_price = ? WHERE order_id = ?";
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteStmt = connection.prepareStatement(deleteSql);
+                 PreparedStatement priceStmt = connection.prepareStatement(priceSql)) {
+                deleteStmt.setInt(1, orderId);
+                deleteStmt.setInt(2, bookId);
+                deleteStmt.executeUpdate();
+
+                priceStmt.setDouble(1, finalPrice);
+                priceStmt.setInt(2, orderId);
+                priceStmt.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         }
+        ChangeNotifier.fireOrderChanged(orderId);
     }
 
     @Override
@@ -198,46 +368,32 @@ public class OrderDaoImpl implements OrderDao {
 
             pstmt.executeUpdate();
         }
+        ChangeNotifier.fireOrderChanged(orderId);
     }
-    
-    public void updateBookPhysicalCopies(int bookId, int quantity) throws SQLException {
-        String sql = "UPDATE books SET physical_copies = physical_copies - ?,sold_copies = sold_copies + ? WHERE book_id = ?";
 
-        try (Connection connection = Database.getConnection();
-             PreparedStatement pstmt = connection.prepareStatement(sql)) {
-
-            pstmt.setInt(1, quantity);
-            pstmt.setInt(2, quantity);
-            pstmt.setInt(3, bookId);
-
-            int updatedRows = pstmt.executeUpdate();
-            if (updatedRows == 0) {
-                throw new SQLException("Failed to update physical copies for book with ID: " + bookId);
-            }
+    @Override
+    public void updateOrderDetails(int orderId, List<OrderDetail> orderDetails) throws SQLException {
+        try (Connection connection = Database.getConnection()) {
+            updateOrderDetails(connection, orderId, orderDetails);
         } catch (SQLException e) {
-            e.printStackTrace(); // Log or handle the exception
-            throw new SQLException("Error updating physical copies for book ID " + bookId, e);
+            e.printStackTrace(); // Log or handle the exception as needed
+            throw new RuntimeException("Failed to update order details", e);
         }
+        ChangeNotifier.fireOrderChanged(orderId);
     }
 
-    public void updateOrderDetails(int orderId, List<OrderDetail> orderDetails) throws SQLException {
+    // Updates the quantity and total of each line on a connection the caller already holds
+    private void updateOrderDetails(Connection connection, int orderId, List<OrderDetail> orderDetails) throws SQLException {
         String sql = "UPDATE " + DETAIL_TABLE_NAME + " SET qty = ?, total_price = ? WHERE order_id = ? AND book_id = ?";
-
-        try (Connection connection = Database.getConnection();
-             PreparedStatement pstmt = connection.prepareStatement(sql)) {
-
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             for (OrderDetail detail : orderDetails) {
                 pstmt.setInt(1, detail.getQuantity());
                 pstmt.setDouble(2, detail.getTotalPrice());
                 pstmt.setInt(3, orderId);
                 pstmt.setInt(4, detail.getBookId());
-
-                // Execute the update for each order detail
-                pstmt.executeUpdate();
+                pstmt.addBatch();
             }
-        } catch (SQLException e) {
-            e.printStackTrace(); // Log or handle the exception as needed
-            throw new RuntimeException("Failed to update order details", e);
+            pstmt.executeBatch();
         }
     }
 
@@ -268,31 +424,50 @@ public class OrderDaoImpl implements OrderDao {
 
     @Override
     public List<Order> getCompletedOrders(String username) throws SQLException {
-        List<Order> completedOrders = new ArrayList<>();
-        String sql = "SELECT * FROM " + MASTER_TABLE_NAME + " WHERE username = ? AND status = 'completed'";
-
+        return loadOrders("WHERE o.username = ? AND o.status = 'completed'", new Object[] { username });
+    }
+    
+    // Completed orders of one user, or (username == null) of every customer, read with a single
+    // query straight into a columnar store; header columns are only read once per order
+    @Override
+    public OrderLineStore loadCompletedOrderLines(String username) throws SQLException {
+        String sql = "SELECT o.order_id, o.username, o.status, o.order_datetime, o.final_price, " +
+                "d.book_id, d.qty, d.total_price " +
+                "FROM " + MASTER_TABLE_NAME + " o " +
+                (username != null ? "" : "JOIN users u ON u.username = o.username ") +
+                "LEFT JOIN " + DETAIL_TABLE_NAME + " d ON d.order_id = o.order_id " +
+                (username != null ? "WHERE o.username = ? " : "WHERE o.username != 'admin' ") +
+                "AND o.status = 'completed' ORDER BY o.username, o.order_id";
+        OrderLineStore store = new OrderLineStore();
         try (Connection connection = Database.getConnection();
              PreparedStatement pstmt = connection.prepareStatement(sql)) {
 
-            pstmt.setString(1, username);
+            pstmt.setFetchSize(500);
+            if (username != null) {
+                pstmt.setString(1, username);
+            }
             try (ResultSet rs = pstmt.executeQuery()) {
+                int currentOrderId = -1;
                 while (rs.next()) {
                     int orderId = rs.getInt("order_id");
-                    double finalPrice = rs.getDouble("final_price");
-                    String status = rs.getString("status");
-                    Timestamp orderDatetime = rs.getTimestamp("order_datetime"); // Fetch the order_datetime
-
-                    List<OrderDetail> orderDetails = getOrderDetails(orderId);
-                    Order order = new Order(username, finalPrice, status, orderDatetime, orderDetails);
-                    order.setOrderId(orderId);
-                    order.setOrderDatetime(orderDatetime); // Set the order datetime in the order object
-                    completedOrders.add(order);
+                    if (orderId != currentOrderId) {
+                        store.addOrder(orderId, rs.getString("username"), rs.getString("status"),
+                                rs.getTimestamp("order_datetime"), rs.getDouble("final_price"));
+                        currentOrderId = orderId;
+                    }
+
+                    // book_id is NULL when the order has no detail rows
+                    int bookId = rs.getInt("book_id");
+                    if (!rs.wasNull()) {
+                        store.addLine(bookId, rs.getInt("qty"), rs.getDouble("total_price"));
+                    }
                 }
             }
         }
-        return completedOrders;
+        store.trimToSize();
+        return store;
     }
-    
+
     @Override
     public List<User> getAllUsers() throws SQLException {
         List<User> userList = new ArrayList<>();
@@ -317,4 +492,87 @@ public class OrderDaoImpl implements OrderDao {
         }
         return userList;
     }
+
+    // Counts the detail lines of completed orders, for one user or (username == null) all customers
+    @Override
+    public int countCompletedOrderLines(String username) throws SQLException {
+        String sql = "SELECT COUNT(*) " + completedLinesFromClause(username);
+        try (Connection connection = Database.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+
+            if (username != null) {
+                pstmt.setString(1, username);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Streams every completed order line joined with its book through the handler
+    // row by row, so callers can export any number of lines in constant memory
+    @Override
+    public void streamCompletedOrderLines(String username, OrderLineHandler handler) throws SQLException, IOException {
+        String sql = "SELECT o.username, o.order_id, o.order_datetime, o.final_price, o.status, " +
+                "b.title, b.authors, d.qty, d.total_price " +
+                completedLinesFromClause(username) +
+                " ORDER BY o.username, o.order_id";
+        try (Connection connection = Database.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+
+            pstmt.setFetchSize(500);
+            if (username != null) {
+                pstmt.setString(1, username);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(new OrderLine(
+                            rs.getString("username"),
+                            rs.getInt("order_id"),
+                            rs.getTimestamp("order_datetime"),
+                            rs.getDouble("final_price"),
+                            rs.getString("status"),
+                            rs.getString("title"),
+                            rs.getString("authors"),
+                            rs.getInt("qty"),
+                            rs.getDouble("total_price")));
+                }
+            }
+        }
+    }
+
+    // Quantity sold per book for each day since the given date, based on completed orders' order_datetime
+    @Override
+    public Map<LocalDate, Map<Integer, Integer>> getDailyBookSales(LocalDate since) throws SQLException {
+        Map<LocalDate, Map<Integer, Integer>> sales = new TreeMap<>();
+        String sql = "SELECT o.order_datetime, d.book_id, d.qty " +
+                "FROM " + MASTER_TABLE_NAME + " o " +
+                "JOIN " + DETAIL_TABLE_NAME + " d ON d.order_id = o.order_id " +
+                "WHERE o.status = 'completed' AND o.order_datetime >= ?";
+        try (Connection connection = Database.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(since.atStartOfDay()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate day = rs.getTimestamp("order_datetime").toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+                    sales.computeIfAbsent(day, key -> new HashMap<>())
+                            .merge(rs.getInt("book_id"), rs.getInt("qty"), Integer::sum);
+                }
+            }
+        }
+        return sales;
+    }
+
+    private String completedLinesFromClause(String username) {
+        String from = "FROM " + MASTER_TABLE_NAME + " o " +
+                "JOIN " + DETAIL_TABLE_NAME + " d ON d.order_id = o.order_id " +
+                "JOIN books b ON b.book_id = d.book_id ";
+        if (username != null) {
+            return from + "WHERE o.username = ? AND o.status = 'completed'";
+        }
+        // Same customer set as getAllUsers(): registered users other than admin
+        return from + "JOIN users u ON u.username = o.username " +
+                "WHERE o.status = 'completed' AND o.username != 'admin'";
+    }
 }
@@ -0,0 +1,10 @@
+package dao;
+
+import java.io.IOException;
+
+import model.OrderLine;
+
+// Receives order lines one at a time while a query is being streamed
+public interface OrderLineHandler {
+    void handle(OrderLine line) throws IOException;
+}
@@ -0,0 +1,9 @@
+package dao;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+// Notified after an order has been checked out, with the quantity sold per book id
+public interface SalesListener {
+    void booksSold(Map<Integer, Integer> quantities, Timestamp orderDatetime);
+}
@@ -0,0 +1,172 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Versioned schema migrations, run once at startup from Model.setup().
+// Applied versions are recorded in the schema_version table, so each migration runs exactly once
+// per database; a migration and its version row are committed in the same transaction.
+public class SchemaMigrator {
+    private static final String VERSION_TABLE_NAME = "schema_version";
+
+    // One schema change, applied on the migrator's connection inside its transaction
+    @FunctionalInterface
+    public interface Migration {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private final Map<Integer, String> descriptions = new TreeMap<>();
+    private final Map<Integer, Migration> migrations = new TreeMap<>();
+
+    public SchemaMigrator(UserDao userDao, BookDao bookDao, OrderDao orderDao) {
+        // Version 1 is the original schema; its CREATE TABLE IF NOT EXISTS statements leave existing databases untouched
+        add(1, "Create users, books, orders and orderDetails tables", connection -> {
+            userDao.setup(connection);
+            bookDao.setup(connection);
+            orderDao.setup(connection);
+        });
+
+        // Per-user history and cart lookups filter on username and status; exports and
+        // time-windowed sales filter completed orders by date; order lines are always read by order
+        add(2, "Index order lookups",
+                "CREATE INDEX IF NOT EXISTS idx_orders_username_status ON orders (username, status)",
+                "CREATE INDEX IF NOT EXISTS idx_orders_status_datetime ON orders (status, order_datetime)",
+                "CREATE INDEX IF NOT EXISTS idx_orderDetails_order_book ON orderDetails (order_id, book_id)");
+
+        // Full-text index over book titles and authors. Triggers keep it in step with every write
+        // to books, including createBook, updateBook and deleteBook; prefix indexes speed up "jav*" queries
+        add(3, "Full-text search over book titles and authors",
+                "CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5(title, authors, " +
+                        "content='books', content_rowid='book_id', tokenize='unicode61 remove_diacritics 2', prefix='2 3')",
+                "CREATE TRIGGER IF NOT EXISTS books_fts_insert AFTER INSERT ON books BEGIN " +
+                        "INSERT INTO books_fts (rowid, title, authors) VALUES (new.book_id, new.title, new.authors); END",
+                "CREATE TRIGGER IF NOT EXISTS books_fts_delete AFTER DELETE ON books BEGIN " +
+                        "INSERT INTO books_fts (books_fts, rowid, title, authors) VALUES ('delete', old.book_id, old.title, old.authors); END",
+                "CREATE TRIGGER IF NOT EXISTS books_fts_update AFTER UPDATE OF title, authors ON books BEGIN " +
+                        "INSERT INTO books_fts (books_fts, rowid, title, authors) VALUES ('delete', old.book_id, old.title, old.authors); " +
+                        "INSERT INTO books_fts (rowid, title, authors) VALUES (new.book_id, new.title, new.authors); END",
+                "INSERT INTO books_fts (books_fts) VALUES ('rebuild')");
+
+        // Status comparisons are exact so they can use the orders indexes; older builds wrote "Pending"
+        add(4, "Store order statuses in lower case",
+                "UPDATE orders SET status = lower(status) WHERE status <> lower(status)");
+
+        // Title, authors and price are saved only against the version they were read at; copy counts
+        // change by relative amounts and need no version
+        add(5, "Version book details for optimistic updates",
+                "ALTER TABLE books ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+
+        // Changes committed by each instance, so the others sharing this file can update their caches
+        add(6, "Change log for other instances",
+                "CREATE TABLE IF NOT EXISTS " + ChangeLog.TABLE_NAME + " (" +
+                        "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "origin TEXT NOT NULL, " +
+                        "type TEXT NOT NULL, " +
+                        "entity_id INTEGER NOT NULL, " +
+                        "username TEXT, " +
+                        "detail TEXT, " +
+                        "event_time INTEGER, " +
+                        "logged_at INTEGER NOT NULL)",
+                "CREATE INDEX IF NOT EXISTS idx_change_log_logged_at ON " + ChangeLog.TABLE_NAME + " (logged_at)");
+    }
+
+    private void add(int version, String description, Migration migration) {
+        if (migrations.containsKey(version)) {
+            throw new IllegalArgumentException("Duplicate schema version " + version);
+        }
+        descriptions.put(version, description);
+        migrations.put(version, migration);
+    }
+
+    private void add(int version, String description, String... statements) {
+        add(version, description, connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : statements) {
+                    stmt.executeUpdate(sql);
+                }
+            }
+        });
+    }
+
+    // Applies every migration newer than the database, in version order; returns how many ran
+    public int migrate() throws SQLException {
+        int applied = 0;
+        try (Connection connection = Database.getConnection()) {
+            // A catalog lookup is enough on every start after the first; the DDL only runs on a new database
+            if (!tableExists(connection, VERSION_TABLE_NAME)) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE_NAME + " (" +
+                            "version INTEGER PRIMARY KEY, " +
+                            "description VARCHAR(255) NOT NULL, " +
+                            "applied_at TIMESTAMP NOT NULL)");
+                }
+            }
+
+            Set<Integer> done = getAppliedVersions(connection);
+            for (Map.Entry<Integer, Migration> entry : migrations.entrySet()) {
+                int version = entry.getKey();
+                if (!done.contains(version) && apply(connection, version, entry.getValue())) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private boolean apply(Connection connection, int version, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            // Claiming the version first takes SQLite's write lock, so a second process
+            // starting at the same time waits and then finds the version already applied
+            String sql = "INSERT OR IGNORE INTO " + VERSION_TABLE_NAME + " (version, description, applied_at) VALUES (?, ?, ?)";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, version);
+                pstmt.setString(2, descriptions.get(version));
+                pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                if (pstmt.executeUpdate() == 0) {
+                    connection.rollback();
+                    return false;
+                }
+            }
+
+            migration.apply(connection);
+            connection.commit();
+            System.out.println("Applied schema version " + version + ": " + descriptions.get(version));
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw new SQLException("Schema migration " + version + " failed", e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        String sql = "SELECT EXISTS (SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static Set<Integer> getAppliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM " + VERSION_TABLE_NAME)) {
+            while (rs.next()) {
+                versions.add(rs.getInt("version"));
+            }
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,19 @@
+package dao;
+
+import java.sql.SQLException;
+
+// Thrown when a book's details were changed or the book deleted since the caller read it
+public class StaleBookException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final int bookId;
+
+    public StaleBookException(int bookId) {
+        super("Book ID " + bookId + " was changed or deleted by someone else");
+        this.bookId = bookId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+}
@@ -0,0 +1,150 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prepared statements of one physical connection, keyed by SQL text and kept across pool borrows.
+// Callers get a proxy whose close() clears the parameters and hands the statement back to the
+// cache. If the same SQL is already in use on the connection (a nested query), a plain
+// uncached statement is prepared instead.
+public class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    // Least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public synchronized PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        Entry entry = entries.get(key);
+        if (entry != null && entry.inUse) {
+            misses.incrementAndGet();
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            entry = new Entry(physical.prepareStatement(sql, autoGeneratedKeys));
+            entries.put(key, entry);
+            evictIdle();
+        }
+        entry.inUse = true;
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new Checkout(entry, owner));
+    }
+
+    // Closes the least recently used idle statements while the cache is over its limit
+    private void evictIdle() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.inUse) {
+                iterator.remove();
+                closeQuietly(entry.statement);
+            }
+        }
+    }
+
+    private synchronized void checkIn(Entry entry) {
+        entry.inUse = false;
+        try {
+            entry.statement.clearParameters();
+            entry.statement.clearBatch();
+        } catch (SQLException e) {
+            entries.values().remove(entry);
+            closeQuietly(entry.statement);
+        }
+        evictIdle();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void close() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+        private final PreparedStatement statement;
+        private boolean inUse;
+
+        private Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    // One use of a cached statement; close() returns it to the cache
+    private class Checkout implements InvocationHandler {
+        private final Entry entry;
+        private final Connection owner;
+        private boolean returned;
+
+        private Checkout(Entry entry, Connection owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        checkIn(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || entry.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package dao;
+
+// Notified after a user row was created or updated
+public interface UserChangeListener {
+    void userChanged(String username);
+}
@@ -1,11 +1,12 @@
 package dao;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
 import model.User;
 
 public interface UserDao {
-    void setup() throws SQLException;
+    void setup(Connection connection) throws SQLException;
     User getUser(String username, String password) throws SQLException;
     User createUser(String username, String password, String firstName, String lastName) throws SQLException;
     List<User> getAllUsers() throws SQLException;
@@ -16,9 +16,8 @@ public class UserDaoImpl implements UserDao {
     public UserDaoImpl() {}
 
     @Override
-    public void setup() throws SQLException {
-        try (Connection connection = Database.getConnection();
-             Statement stmt = connection.createStatement()) {
+    public void setup(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
             String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
                     + "first_name VARCHAR(20) NOT NULL, "
                     + "last_name VARCHAR(20) NOT NULL, "
@@ -61,8 +60,9 @@ public class UserDaoImpl implements UserDao {
             stmt.setString(3, username);
             stmt.setString(4, password);
             stmt.executeUpdate();
-            return new User(username, password, firstName, lastName);
         }
+        ChangeNotifier.fireUserChanged(username);
+        return new User(username, password, firstName, lastName);
     }
 
     @Override
@@ -95,6 +95,7 @@ public class UserDaoImpl implements UserDao {
             stmt.setString(4, user.getUsername()); 
             stmt.executeUpdate();
         }
+        ChangeNotifier.fireUserChanged(user.getUsername());
     }
 
     @Override
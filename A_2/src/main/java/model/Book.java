@@ -7,6 +7,7 @@ public class Book {
     private int physicalCopies;
     private double price;
     private int soldCopies;
+    private int version; // Bumped by every change to title, authors or price
 
     public Book(int bookId, String title, String authors, int physicalCopies, double price, int soldCopies) {
         this.id = bookId;
@@ -25,6 +26,11 @@ public class Book {
         this.soldCopies = soldCopies;
     }
 
+    public Book(Book other) {
+        this(other.id, other.title, other.authors, other.physicalCopies, other.price, other.soldCopies);
+        this.version = other.version;
+    }
+
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
     public String getTitle() { return title; }
@@ -37,4 +43,6 @@ public class Book {
     public void setPrice(double price) { this.price = price; }
     public int getSoldCopies() { return soldCopies; }
     public void setSoldCopies(int soldCopies) { this.soldCopies = soldCopies; }
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
 }
@@ -0,0 +1,359 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import dao.BookDao;
+import dao.Database;
+import javafx.concurrent.Task;
+
+// Background task that bulk-loads books from a CSV or TSV file with a header row.
+// The file is streamed: this thread splits it into chunks of records, the chunks are parsed and
+// validated in parallel, and the valid books are inserted in file order with one
+// BookDao.createBooks call per batch, queued on the database writer like every other write.
+// Rows that fail validation are skipped and written, with their line number and the reason,
+// to "<file>.rejected.txt". Batches already committed stay in the database if the task fails
+// or is cancelled.
+public class BookImportTask extends Task<BookImportTask.Report> {
+    private static final int CHUNK_RECORDS = 2000; // Records handed to one parser at a time
+    // Parsed chunks waiting to be written; bounds memory however large the file is
+    private static final int MAX_CHUNKS_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final BookDao bookDao;
+    private final File file;
+    private final int batchSize;
+
+    // Column positions taken from the header row; soldCopies is optional (-1 when absent)
+    private char delimiter;
+    private int columnCount;
+    private int titleColumn;
+    private int authorsColumn;
+    private int priceColumn;
+    private int physicalCopiesColumn;
+    private int soldCopiesColumn;
+
+    private final List<Book> batch = new ArrayList<>();
+    private BufferedWriter rejectsWriter;
+    private File rejectsFile;
+    private long imported;
+    private long rejected;
+    private long startNanos;
+
+    // Outcome of an import
+    public static class Report {
+        private final long imported;
+        private final long rejected;
+        private final long millis;
+        private final File rejectsFile;
+
+        public Report(long imported, long rejected, long millis, File rejectsFile) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.millis = millis;
+            this.rejectsFile = rejectsFile;
+        }
+
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public long getMillis() { return millis; }
+        public File getRejectsFile() { return rejectsFile; } // null when every row was valid
+
+        public long getRowsPerSecond() {
+            return millis == 0 ? imported : imported * 1000 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + imported + " books in " + millis + " ms (" + getRowsPerSecond() + " rows/s), " +
+                    rejected + " rows rejected" + (rejectsFile != null ? " (see " + rejectsFile.getName() + ")" : "");
+        }
+    }
+
+    // Records read from the file, with the line each one starts on
+    private static class Chunk {
+        private final List<String> records = new ArrayList<>(CHUNK_RECORDS);
+        private final List<Long> lineNumbers = new ArrayList<>(CHUNK_RECORDS);
+    }
+
+    // A chunk after parsing: the valid books in file order and a message per rejected row
+    private static class ParsedChunk {
+        private final List<Book> books = new ArrayList<>();
+        private final List<String> rejects = new ArrayList<>();
+    }
+
+    public BookImportTask(BookDao bookDao, File file, int batchSize) {
+        this.bookDao = bookDao;
+        this.file = file;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    protected Report call() throws Exception {
+        startNanos = System.nanoTime();
+        long fileSize = Math.max(1, file.length());
+        long bytesRead = 0;
+        long lineNumber = 0;
+        updateProgress(0, fileSize);
+
+        Deque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Chunk chunk = new Chunk();
+            StringBuilder record = null;
+            long recordLine = 0;
+            boolean inQuotes = false;
+            boolean headerRead = false;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                bytesRead += line.length() + 1;
+                if (record == null) {
+                    record = new StringBuilder(line);
+                    recordLine = lineNumber;
+                } else {
+                    record.append('\n').append(line); // A quoted field continues on the next line
+                }
+                inQuotes ^= countQuotes(line) % 2 == 1;
+                if (inQuotes) {
+                    continue;
+                }
+
+                String text = record.toString();
+                record = null;
+                if (text.isBlank()) {
+                    continue;
+                }
+                if (!headerRead) {
+                    readHeader(text);
+                    headerRead = true;
+                    continue;
+                }
+
+                chunk.records.add(text);
+                chunk.lineNumbers.add(recordLine);
+                if (chunk.records.size() == CHUNK_RECORDS) {
+                    Chunk full = chunk;
+                    inFlight.add(CompletableFuture.supplyAsync(() -> parse(full)));
+                    chunk = new Chunk();
+
+                    if (inFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+                        store(inFlight.poll().join());
+                    }
+                    if (isCancelled()) {
+                        throw new InterruptedIOException("Import cancelled");
+                    }
+                    updateProgress(Math.min(bytesRead, fileSize), fileSize);
+                    updateMessage(progressMessage());
+                }
+            }
+
+            if (!headerRead) {
+                throw new IOException("The file is empty");
+            }
+            if (!chunk.records.isEmpty()) {
+                Chunk last = chunk;
+                inFlight.add(CompletableFuture.supplyAsync(() -> parse(last)));
+            }
+            while (!inFlight.isEmpty()) {
+                store(inFlight.poll().join());
+            }
+            if (record != null) {
+                // The last record never closed its quotes; reject it rather than guess
+                reject("line " + recordLine + ": unterminated quoted field");
+            }
+            writeBatch(batch.size());
+        } finally {
+            if (rejectsWriter != null) {
+                rejectsWriter.close();
+            }
+        }
+
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        Report report = new Report(imported, rejected, millis, rejectsFile);
+        System.out.println(report);
+        updateProgress(fileSize, fileSize);
+        updateMessage(report.toString());
+        return report;
+    }
+
+    // Finds the columns by name, so suppliers can order them as they like
+    private void readHeader(String header) throws IOException {
+        delimiter = header.indexOf('\t') >= 0 ? '\t' : ',';
+        List<String> names = splitFields(header, delimiter);
+        columnCount = names.size();
+        titleColumn = authorsColumn = priceColumn = physicalCopiesColumn = soldCopiesColumn = -1;
+
+        for (int i = 0; i < names.size(); i++) {
+            switch (names.get(i).toLowerCase().replaceAll("[^a-z]", "")) {
+                case "title":
+                    titleColumn = i;
+                    break;
+                case "author":
+                case "authors":
+                    authorsColumn = i;
+                    break;
+                case "price":
+                case "priceaud":
+                    priceColumn = i;
+                    break;
+                case "physicalcopies":
+                case "copies":
+                case "stock":
+                    physicalCopiesColumn = i;
+                    break;
+                case "soldcopies":
+                case "sold":
+                    soldCopiesColumn = i;
+                    break;
+                default:
+                    break; // Extra columns are ignored
+            }
+        }
+        if (titleColumn < 0 || authorsColumn < 0 || priceColumn < 0 || physicalCopiesColumn < 0) {
+            throw new IOException("The header must name Title, Authors, Price and Physical Copies columns: " + header);
+        }
+    }
+
+    // Runs on a parser thread; touches no shared state
+    private ParsedChunk parse(Chunk chunk) {
+        ParsedChunk parsed = new ParsedChunk();
+        for (int i = 0; i < chunk.records.size(); i++) {
+            String record = chunk.records.get(i);
+            try {
+                parsed.books.add(toBook(splitFields(record, delimiter)));
+            } catch (IllegalArgumentException e) {
+                parsed.rejects.add("line " + chunk.lineNumbers.get(i) + ": " + e.getMessage() + ": " + record);
+            }
+        }
+        return parsed;
+    }
+
+    private Book toBook(List<String> fields) {
+        if (fields.size() < columnCount) {
+            throw new IllegalArgumentException("expected " + columnCount + " fields but found " + fields.size());
+        }
+        String title = fields.get(titleColumn).trim();
+        String authors = fields.get(authorsColumn).trim();
+        if (title.isEmpty()) {
+            throw new IllegalArgumentException("missing title");
+        }
+        if (authors.isEmpty()) {
+            throw new IllegalArgumentException("missing authors");
+        }
+
+        double price;
+        try {
+            price = Double.parseDouble(fields.get(priceColumn).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid price '" + fields.get(priceColumn) + "'");
+        }
+        if (!Double.isFinite(price) || price < 0) {
+            throw new IllegalArgumentException("invalid price '" + fields.get(priceColumn) + "'");
+        }
+
+        int physicalCopies = parseCount(fields.get(physicalCopiesColumn), "physical copies");
+        int soldCopies = soldCopiesColumn < 0 || fields.get(soldCopiesColumn).isBlank()
+                ? 0 : parseCount(fields.get(soldCopiesColumn), "sold copies");
+        return new Book(title, authors, physicalCopies, price, soldCopies);
+    }
+
+    private static int parseCount(String value, String name) {
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("invalid " + name + " '" + value + "'");
+    }
+
+    // Splits one record; fields may be quoted, with "" standing for a quote inside a quoted field
+    private static List<String> splitFields(String record, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int countQuotes(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    // Queues the chunk's books and writes every full batch
+    private void store(ParsedChunk parsed) throws Exception {
+        for (String message : parsed.rejects) {
+            reject(message);
+        }
+        batch.addAll(parsed.books);
+        while (batch.size() >= batchSize) {
+            writeBatch(batchSize);
+        }
+    }
+
+    private void writeBatch(int size) throws Exception {
+        if (size == 0) {
+            return;
+        }
+        List<Book> books = batch.subList(0, size);
+        Database.getWriter().execute(() -> {
+            bookDao.createBooks(books);
+            return null;
+        });
+        imported += size;
+        books.clear();
+    }
+
+    private void reject(String message) throws IOException {
+        if (rejectsWriter == null) {
+            rejectsFile = new File(file.getPath() + ".rejected.txt");
+            rejectsWriter = Files.newBufferedWriter(rejectsFile.toPath(), StandardCharsets.UTF_8);
+        }
+        rejectsWriter.write(message);
+        rejectsWriter.newLine();
+        rejected++;
+    }
+
+    private String progressMessage() {
+        long millis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        return "Imported " + imported + " books, " + rejected + " rejected (" + imported * 1000 / millis + " rows/s)";
+    }
+}
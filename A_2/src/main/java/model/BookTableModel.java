@@ -6,58 +6,169 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import dao.BookDaoImpl;
-import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import dao.BookChangeListener;
+import dao.ChangeNotifier;
+
+// Backs the admin book grid. After the first load the list is kept current by DAO change events:
+// a changed book is re-read and replaced in place, a new one is inserted and a deleted one removed,
+// so editing one row never re-reads the whole table. The list stays sorted by book id.
+// All list state is only touched on the FX thread.
+public class BookTableModel implements BookChangeListener {
+    private static final Comparator<Book> BY_ID = Comparator.comparingInt(Book::getId);
 
-public class BookTableModel {
     private ObservableList<Book> books;
-    private BookDaoImpl bookDao;
+    private DataService dataService;
+    private boolean loaded;
+    private boolean loading;
+    private boolean fetching;
+    private boolean reloadNeeded; // The catalog changed wholesale while a load was in flight
+    private final Set<Integer> pendingIds = new HashSet<>(); // Changed books waiting to be re-read
+    private final Set<Integer> removedIds = new HashSet<>(); // Deleted while a re-read was in flight
 
-    public BookTableModel() {
+    public BookTableModel(Model model) {
         books = FXCollections.observableArrayList();
-        bookDao = new BookDaoImpl();
-        loadBooksFromDatabase();
+        dataService = model.getDataService();
+        ChangeNotifier.addBookListener(this);
     }
 
     public ObservableList<Book> getBooks() {
         return books;
     }
 
+    // Database writes run in the background; the resulting change events update the list
     public void addBook(Book book) {
-        books.add(book);
-        try {
-            bookDao.createBook(book);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        DataService.onFxThread(dataService.createBook(book), ignored -> {}, Throwable::printStackTrace);
     }
 
-    public void updateBook(Book book) {
-        try {
-            bookDao.updateBook(book);
-            loadBooksFromDatabase();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    // The details are checked against the book's version and the stock moves by stockChange;
+    // onFailure receives a StaleBookException when someone else edited the book first, or an
+    // InsufficientStockException when a count would go below zero; either way nothing is saved
+    public void updateBook(Book book, StockChange stockChange, Consumer<Throwable> onFailure) {
+        DataService.onFxThread(dataService.updateBook(book, stockChange), ignored -> {}, onFailure);
     }
 
     public void removeBook(Book book) {
-        books.remove(book);
-        try {
-            bookDao.deleteBook(book.getId());
-        } catch (SQLException e) {
-            e.printStackTrace();
+        DataService.onFxThread(dataService.deleteBook(book.getId()), ignored -> {}, Throwable::printStackTrace);
+    }
+
+    // Loads the catalog the first time it is needed; afterwards change events keep it current
+    public void ensureLoaded() {
+        if (!loaded && !loading) {
+            loadBooksFromDatabase();
         }
     }
 
+    // Explicit full refresh
     public void loadBooksFromDatabase() {
-        try {
-            List<Book> bookList = bookDao.getAllBooks();
-            books.setAll(bookList);
-        } catch (SQLException e) {
+        loading = true;
+        DataService.onFxThread(dataService.getAllBooks(), all -> {
+            loading = false;
+            if (reloadNeeded) {
+                // The snapshot is already out of date, so read again rather than show it
+                reloadNeeded = false;
+                loadBooksFromDatabase();
+                return;
+            }
+            all.sort(BY_ID);
+            books.setAll(all);
+            loaded = true;
+            // Changes reported while the catalog was loading may not be in the snapshot
+            fetchPending();
+        }, e -> {
+            loading = false;
             e.printStackTrace();
+        });
+    }
+
+    // Stops listening for DAO events, e.g. when the user logs out
+    public void close() {
+        ChangeNotifier.removeBookListener(this);
+    }
+
+    @Override
+    public void bookChanged(int bookId) {
+        DataService.FX_THREAD.execute(() -> {
+            removedIds.remove(bookId);
+            pendingIds.add(bookId);
+            fetchPending();
+        });
+    }
+
+    @Override
+    public void bookRemoved(int bookId) {
+        DataService.FX_THREAD.execute(() -> {
+            pendingIds.remove(bookId);
+            removedIds.add(bookId);
+            int index = indexOf(bookId);
+            if (index >= 0) {
+                books.remove(index);
+            }
+        });
+    }
+
+    // A bulk write has no per-row events, so a loaded table is read again in full; repeated
+    // events during a long import collapse into at most one extra load
+    @Override
+    public void catalogChanged() {
+        DataService.FX_THREAD.execute(() -> {
+            if (loading) {
+                reloadNeeded = true;
+            } else if (loaded) {
+                pendingIds.clear();
+                loadBooksFromDatabase();
+            }
+        });
+    }
+
+    // Re-reads all pending books in one batched call; events arriving meanwhile wait for the next batch
+    private void fetchPending() {
+        if (!loaded || loading || fetching || pendingIds.isEmpty()) {
+            return;
         }
+        List<Integer> batch = new ArrayList<>(pendingIds);
+        pendingIds.clear();
+        removedIds.clear();
+        fetching = true;
+
+        DataService.onFxThread(dataService.getBooksByIds(batch), fetched -> {
+            fetching = false;
+            for (Integer bookId : batch) {
+                if (removedIds.contains(bookId)) {
+                    continue;
+                }
+                Book book = fetched.get(bookId);
+                int index = indexOf(bookId);
+                if (book == null) {
+                    if (index >= 0) {
+                        books.remove(index);
+                    }
+                } else if (index >= 0) {
+                    books.set(index, book);
+                } else {
+                    books.add(-index - 1, book);
+                }
+            }
+            fetchPending();
+        }, e -> {
+            fetching = false;
+            e.printStackTrace();
+        });
+    }
+
+    // Binary search by id; a negative result encodes the insertion point as in Collections.binarySearch
+    private int indexOf(int bookId) {
+        Book key = new Book(null, null, 0, 0, 0);
+        key.setId(bookId);
+        return Collections.binarySearch(books, key, BY_ID);
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,100 @@
+package model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+// Client-side copy of a user's pending order and the books in it.
+// The lines are observable so the cart view can add or remove just the rows that changed,
+// and the books (with their stock) for every line are fetched together in one batched call.
+// State is only changed on the FX thread.
+public class CartModel {
+    private final DataService dataService;
+    private final ObservableList<OrderDetail> lines = FXCollections.observableArrayList();
+    private final Map<Integer, Book> books = new HashMap<>();
+    private Order order;
+
+    public CartModel(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    public ObservableList<OrderDetail> getLines() {
+        return lines;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public Book getBook(int bookId) {
+        return books.get(bookId);
+    }
+
+    public double getTotal() {
+        return order == null ? 0 : order.getFinalPrice();
+    }
+
+    // True when any line asks for more copies than are in stock
+    public boolean isCheckoutBlocked() {
+        for (OrderDetail detail : lines) {
+            Book book = books.get(detail.getBookId());
+            if (book != null && detail.getQuantity() > book.getPhysicalCopies()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Loads the pending order, then the books for all of its lines in one query. Reloading only
+    // adds and removes the lines that changed, so a cart view that is shown again keeps its rows
+    public CompletableFuture<Void> load(String username) {
+        return dataService.findPendingOrder(username)
+                .thenCompose(pending -> dataService.getBooksByIds(bookIdsOf(pending))
+                        .thenAcceptAsync(fetched -> {
+                            order = pending;
+                            books.clear();
+                            books.putAll(fetched);
+                            List<OrderDetail> current = pending == null ? List.of() : pending.getOrderDetails();
+                            lines.removeIf(detail -> !current.contains(detail));
+                            for (OrderDetail detail : current) {
+                                if (!lines.contains(detail)) {
+                                    lines.add(detail);
+                                }
+                            }
+                        }, DataService.FX_THREAD));
+    }
+
+    // Re-reads stock for every line in one query, e.g. after a checkout was refused
+    public CompletableFuture<Void> refreshStock() {
+        return dataService.getBooksByIds(bookIdsOf(order))
+                .thenAcceptAsync(books::putAll, DataService.FX_THREAD);
+    }
+
+    // Removes a line locally and persists the removal with a single write
+    public CompletableFuture<Void> remove(OrderDetail detail) {
+        order.getOrderDetails().remove(detail);
+        order.setFinalPrice(order.getFinalPrice() - detail.getTotalPrice());
+        lines.remove(detail);
+        return dataService.removeCartLine(order, detail);
+    }
+
+    // Forgets the order once it has been checked out
+    public void clear() {
+        order = null;
+        books.clear();
+        lines.clear();
+    }
+
+    private static List<Integer> bookIdsOf(Order order) {
+        if (order == null) {
+            return Collections.emptyList();
+        }
+        return order.getOrderDetails().stream().map(OrderDetail::getBookId).collect(Collectors.toList());
+    }
+}
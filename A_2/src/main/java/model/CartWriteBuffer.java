@@ -0,0 +1,151 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import dao.ClosedOrderException;
+import dao.Database;
+import dao.OrderDao;
+
+// Write-behind buffer for add-to-cart changes. Each change is recorded against its Order and
+// repeated changes to the same line are coalesced, keeping only the latest quantity and total.
+// flush() writes everything buffered for an order in one OrderDao.saveCartChanges transaction.
+// DataService calls flush() on its single writer thread: on a timer, and before any other
+// write or read that must see the cart (checkout, line removal, pending order lookup, logout).
+// record() returns a future that completes once the change is written. A failed write is
+// retried with the next flush, up to maxAttempts times; after that, or straight away when it
+// can never succeed (the order was checked out meanwhile), the changes are dropped, their futures
+// fail with the error, and the order is passed to onDropped, since its in-memory lines no longer
+// match the database. On the database writer, a flush only counts once its write group has
+// committed; if the group is rolled back, the changes go back into the buffer like any failed write.
+public class CartWriteBuffer {
+    private final OrderDao orderDao;
+    private final int maxAttempts;
+    private final Consumer<Order> onDropped;
+    private final Map<Order, PendingCart> pending = new IdentityHashMap<>();
+
+    // Buffered changes for one order; line values are copied when recorded
+    private static class PendingCart {
+        private double finalPrice;
+        private final Map<Integer, OrderDetail> newLines = new LinkedHashMap<>();
+        private final Map<Integer, OrderDetail> changedLines = new LinkedHashMap<>();
+        private final List<CompletableFuture<Void>> written = new ArrayList<>();
+        private int attempts;
+    }
+
+    public CartWriteBuffer(OrderDao orderDao, int maxAttempts, Consumer<Order> onDropped) {
+        this.orderDao = orderDao;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.onDropped = onDropped;
+    }
+
+    // Records one added or changed cart line together with the order's new total
+    public synchronized CompletableFuture<Void> record(Order order, OrderDetail detail, boolean newLine) {
+        PendingCart cart = pending.computeIfAbsent(order, key -> new PendingCart());
+        cart.finalPrice = order.getFinalPrice();
+
+        OrderDetail copy = new OrderDetail(detail.getOrderId(), detail.getBookId(), detail.getQuantity(), detail.getTotalPrice());
+        if (newLine || cart.newLines.containsKey(detail.getBookId())) {
+            // A line that is not in the database yet stays an insert however often it changes
+            cart.newLines.put(detail.getBookId(), copy);
+        } else {
+            cart.changedLines.put(detail.getBookId(), copy);
+        }
+
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        cart.written.add(written);
+        return written;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    // Writes the buffered changes of every order belonging to the user (all users when null)
+    public void flush(String username) throws SQLException {
+        List<Map.Entry<Order, PendingCart>> batch = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Order, PendingCart>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Order, PendingCart> entry = iterator.next();
+                if (username == null || username.equals(entry.getKey().getUsername())) {
+                    batch.add(Map.entry(entry.getKey(), entry.getValue())); // IdentityHashMap entries die on remove
+                    iterator.remove();
+                }
+            }
+        }
+
+        SQLException failure = null;
+        for (Map.Entry<Order, PendingCart> entry : batch) {
+            Order order = entry.getKey();
+            PendingCart cart = entry.getValue();
+            try {
+                orderDao.saveCartChanges(order, cart.finalPrice,
+                        new ArrayList<>(cart.newLines.values()), new ArrayList<>(cart.changedLines.values()));
+                Database.getWriter().whenGroupEnds(
+                        () -> cart.written.forEach(written -> written.complete(null)),
+                        () -> retryOrDrop(order, cart, new SQLException("The cart changes were rolled back with their write group")));
+            } catch (ClosedOrderException e) {
+                // Retrying can never succeed; the lines belong to a cart that no longer exists
+                drop(order, cart, e);
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (e instanceof SQLException) {
+                    retryOrDrop(order, cart, e);
+                } else {
+                    drop(order, cart, e);
+                }
+                if (failure == null) {
+                    failure = e instanceof SQLException ? (SQLException) e : new SQLException(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Puts the changes back, under anything recorded since, so the next flush retries them
+    private void retryOrDrop(Order order, PendingCart cart, Exception error) {
+        if (++cart.attempts < maxAttempts) {
+            restore(order, cart);
+        } else {
+            drop(order, cart, error);
+        }
+    }
+
+    private void drop(Order order, PendingCart cart, Exception error) {
+        System.out.println("Dropped " + (cart.newLines.size() + cart.changedLines.size()) +
+                " buffered cart line(s) after " + Math.max(1, cart.attempts) + " attempt(s): " + error.getMessage());
+        cart.written.forEach(written -> written.completeExceptionally(error));
+        onDropped.accept(order);
+    }
+
+    private synchronized void restore(Order order, PendingCart failed) {
+        PendingCart newer = pending.get(order);
+        if (newer == null) {
+            pending.put(order, failed);
+            return;
+        }
+        failed.finalPrice = newer.finalPrice;
+        failed.newLines.putAll(newer.newLines);
+        for (Map.Entry<Integer, OrderDetail> line : newer.changedLines.entrySet()) {
+            if (failed.newLines.containsKey(line.getKey())) {
+                failed.newLines.put(line.getKey(), line.getValue());
+            } else {
+                failed.changedLines.put(line.getKey(), line.getValue());
+            }
+        }
+        failed.written.addAll(newer.written);
+        pending.put(order, failed);
+    }
+}
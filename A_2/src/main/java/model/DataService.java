@@ -0,0 +1,278 @@
+package model;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import dao.Database;
+import javafx.application.Platform;
+
+// Runs the Model's DAO calls away from the JavaFX application thread.
+// Reads run on virtual threads; writes run one at a time, in submission order,
+// on Database's single writer thread so that consecutive cart edits cannot overtake each other.
+// Writes queued together are committed in one transaction (see GroupCommitWriter).
+public class DataService {
+    public static final Executor FX_THREAD = Platform::runLater;
+
+    private static final ExecutorService READ_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("db-read-", 0).factory());
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cart-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Longest time an add-to-cart waits in the write-behind buffer; override with -Dcart.flushMillis
+    private static final long CART_FLUSH_MILLIS = Long.getLong("cart.flushMillis", 2000);
+    // Flushes a failing cart change is tried in before it is dropped; override with -Dcart.flushAttempts
+    private static final int CART_FLUSH_ATTEMPTS = Integer.getInteger("cart.flushAttempts", 5);
+    // Every DAO call waits for this first; Main sets it to the startup schema check, which runs in the background
+    private static volatile CompletableFuture<?> ready = CompletableFuture.completedFuture(null);
+
+    // A DAO call that returns a value
+    @FunctionalInterface
+    public interface DaoCall<T> {
+        T call() throws Exception;
+    }
+
+    // A DAO call that only has side effects
+    @FunctionalInterface
+    public interface DaoAction {
+        void run() throws Exception;
+    }
+
+    private final Model model;
+    private final CartWriteBuffer cartBuffer;
+
+    public DataService(Model model) {
+        this.model = model;
+        this.cartBuffer = new CartWriteBuffer(model.getOrderDao(), CART_FLUSH_ATTEMPTS, model::dropPendingOrder);
+    }
+
+    // Starts flushing the cart buffer on a timer; called once, after construction, so the
+    // timer thread never sees a half-built service
+    public void start() {
+        FLUSH_TIMER.scheduleWithFixedDelay(() -> {
+            if (!cartBuffer.isEmpty()) {
+                flushCart(null).exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
+            }
+        }, CART_FLUSH_MILLIS, CART_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Shared executor for other background work, such as export tasks
+    public static Executor getExecutor() {
+        return READ_EXECUTOR;
+    }
+
+    // Holds back DAO calls until the database is ready; if it fails, the waiting calls fail with the same error
+    public static void waitFor(CompletableFuture<?> databaseReady) {
+        ready = databaseReady;
+    }
+
+    public <T> CompletableFuture<T> read(DaoCall<T> call) {
+        return submit(call, READ_EXECUTOR);
+    }
+
+    // Writes queue on Database's group-commit writer; the future completes when the write has committed
+    public <T> CompletableFuture<T> write(DaoCall<T> call) {
+        return Database.getWriter().submit(() -> {
+            ready.join();
+            return call.call();
+        });
+    }
+
+    public CompletableFuture<Void> write(DaoAction action) {
+        return write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private static <T> CompletableFuture<T> submit(DaoCall<T> call, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                ready.join();
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // Delivers the outcome of a future to the JavaFX application thread
+    public static <T> void onFxThread(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        future.whenCompleteAsync((value, error) -> {
+            if (error != null) {
+                onFailure.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                onSuccess.accept(value);
+            }
+        }, FX_THREAD);
+    }
+
+    public static void shutdown() {
+        FLUSH_TIMER.shutdownNow();
+        READ_EXECUTOR.shutdown();
+    }
+
+    // User operations
+
+    public CompletableFuture<User> getUser(String username, String password) {
+        return read(() -> model.getUserDao().getUser(username, password));
+    }
+
+    public CompletableFuture<User> createUser(String username, String password, String firstName, String lastName) {
+        return write(() -> model.getUserDao().createUser(username, password, firstName, lastName));
+    }
+
+    public CompletableFuture<List<User>> getAllUsers() {
+        return read(() -> model.getUserDao().getAllUsers());
+    }
+
+    public CompletableFuture<Void> updateUser(User user) {
+        return write(() -> model.getUserDao().updateUser(user));
+    }
+
+    // Book operations
+
+    public CompletableFuture<List<Book>> getAllBooks() {
+        return read(() -> model.getBookDao().getAllBooks());
+    }
+
+    // Served from the in-memory bestseller ranking rather than a sorted query
+    public CompletableFuture<List<Book>> getTopSellers() {
+        return read(() -> model.getTopSellers().getTopSellers());
+    }
+
+    public CompletableFuture<List<Book>> getTopSellers(int n, int days) {
+        return read(() -> model.getTopSellers().getTopSellers(n, days));
+    }
+
+    public CompletableFuture<Map<Integer, Book>> getBooksByIds(Collection<Integer> bookIds) {
+        return read(() -> model.getBookDao().getBooksByIds(bookIds));
+    }
+
+    public CompletableFuture<List<Book>> getBooksPage(int afterBookId, int limit) {
+        return read(() -> model.getBookDao().getBooksPage(afterBookId, limit));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(String query, int limit) {
+        return read(() -> model.getBookDao().searchBooks(query, limit));
+    }
+
+    public CompletableFuture<Void> createBook(Book book) {
+        return write(() -> model.getBookDao().createBook(book));
+    }
+
+    // An admin edit, saved as a whole or not at all: the details only if nobody else changed them since
+    // the book was read, and the copy counts moved by the amounts the admin changed them, keeping any
+    // sales in between
+    public CompletableFuture<Void> updateBook(Book book, StockChange stockChange) {
+        return write(() -> model.getBookDao().updateBookDetails(book, stockChange));
+    }
+
+    // Restocks and corrections for many books in one transaction
+    public CompletableFuture<Void> adjustStock(List<StockChange> changes) {
+        return write(() -> model.getBookDao().adjustStock(changes));
+    }
+
+    public CompletableFuture<Void> deleteBook(int bookId) {
+        return write(() -> model.getBookDao().deleteBook(bookId));
+    }
+
+    // Order operations
+
+    // The pending order is read once per session and then shared through Model, so every screen
+    // adds to the same Order; buffered cart changes are written before that first read
+    public CompletableFuture<Order> findPendingOrder(String username) {
+        return model.getPendingOrder(username, () -> flushCart(username)
+                .thenCompose(ignored -> read(() -> model.getOrderDao().findPendingOrder(username))));
+    }
+
+    // Drops the cached pending order so the next lookup reads it from the database again
+    public void invalidatePendingOrder() {
+        model.clearPendingOrder();
+    }
+
+    // The session's cart, created on the client when the user has no pending order; its order
+    // row is inserted with the first buffered line
+    public CompletableFuture<Order> getCart(String username) {
+        return findPendingOrder(username).thenApply(ignored -> model.getOrCreatePendingOrder(username));
+    }
+
+    // Completed orders of one user (every customer when null) in a compact columnar store
+    public CompletableFuture<OrderLineStore> getCompletedOrderLines(String username) {
+        return read(() -> model.getOrderDao().loadCompletedOrderLines(username));
+    }
+
+    // Every non-admin user, whether or not they have placed an order
+    public CompletableFuture<List<User>> getCustomers() {
+        return read(() -> model.getOrderDao().getAllUsers());
+    }
+
+    // Buffers one added or changed cart line; it reaches the database with the next flush,
+    // together with any other changes to the same order, in a single transaction. The future
+    // completes when it has been written, or fails if the change had to be dropped.
+    public CompletableFuture<Void> saveCartLine(Order order, OrderDetail detail, boolean newLine) {
+        return cartBuffer.record(order, detail, newLine);
+    }
+
+    // Writes the user's buffered cart changes (every user's when null)
+    public CompletableFuture<Void> flushCart(String username) {
+        return write(() -> cartBuffer.flush(username));
+    }
+
+    // Blocks until every buffered cart change is written, e.g. when the application exits
+    public void flushCartsAndWait() {
+        try {
+            flushCart(null).join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public CompletableFuture<Void> removeCartLine(Order order, OrderDetail detail) {
+        return write(() -> {
+            cartBuffer.flush(order.getUsername());
+            model.getOrderDao().removeCartLine(order.getOrderId(), detail.getBookId(), order.getFinalPrice());
+        });
+    }
+
+    public CompletableFuture<Void> updateOrderStatus(int orderId, String status) {
+        return write(() -> model.getOrderDao().updateOrderStatus(orderId, status));
+    }
+
+    public CompletableFuture<Void> checkout(Order order) {
+        return write(() -> {
+            cartBuffer.flush(order.getUsername());
+            model.getOrderDao().checkout(order.getOrderId());
+        }).thenRun(() -> model.setPendingOrder(order.getUsername(), null)); // The next add starts a new cart
+    }
+
+    // Starts a bulk import of books from a CSV or TSV file; override the rows per transaction with -Dimport.batchSize
+    public BookImportTask importBooks(File file) {
+        BookImportTask task = new BookImportTask(model.getBookDao(), file, Integer.getInteger("import.batchSize", 10000));
+        READ_EXECUTOR.execute(task);
+        return task;
+    }
+
+    // Starts a CSV export of completed orders (all customers when username is null)
+    public OrderExportTask exportCompletedOrders(File file, String username) {
+        OrderExportTask task = new OrderExportTask(model.getOrderDao(), file, username);
+        READ_EXECUTOR.execute(task);
+        return task;
+    }
+}
@@ -1,35 +1,59 @@
 package model;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import dao.UserDao;
 import dao.UserDaoImpl;
 import dao.BookDao;
 import dao.BookDaoImpl;
+import dao.CachingBookDao;
+import dao.ChangeNotifier;
+import dao.DaoMetrics;
+import dao.Database;
 import dao.OrderDao; 
+import dao.OrderChangeListener;
 import dao.OrderDaoImpl;
+import dao.SchemaMigrator;
 
-public class Model {
+public final class Model implements OrderChangeListener {
     private final UserDao userDao;
     private final BookDao bookDao;
     private final OrderDao orderDao;
+    private final TopSellers topSellers;
+    private final DataService dataService;
     private User currentUser; 
+    // The current user's pending order, shared by every screen of the session
+    private String pendingOrderUser;
+    private CompletableFuture<Order> pendingOrder;
 
     public Model() {
-        userDao = new UserDaoImpl();
-        bookDao = new BookDaoImpl();
-        orderDao = new OrderDaoImpl();
+        // Every DAO call is timed; BookDaoImpl is recorded separately so cache misses show up on their own
+        userDao = DaoMetrics.instrument(UserDao.class, new UserDaoImpl(), "UserDao");
+        bookDao = DaoMetrics.instrument(BookDao.class,
+                new CachingBookDao(DaoMetrics.instrument(BookDao.class, new BookDaoImpl(), "BookDaoImpl")), "BookDao");
+        orderDao = DaoMetrics.instrument(OrderDao.class, new OrderDaoImpl(), "OrderDao");
+        // Ranking size and the longest time window can be overridden with -Dtopsellers.* system properties
+        topSellers = new TopSellers(bookDao, orderDao,
+                Integer.getInteger("topsellers.size", 5),
+                Integer.getInteger("topsellers.maxWindowDays", 30));
+        dataService = new DataService(this);
+        dataService.start();
+        ChangeNotifier.addOrderListener(this);
     }
     
     public void setup() {
         try {
-            userDao.setup();
-            bookDao.setup();
-            orderDao.setup();
+            // Creates or upgrades the schema; versions already recorded in the database are skipped
+            new SchemaMigrator(userDao, bookDao, orderDao).migrate();
+            // Other instances on the same database file now reach this one's caches
+            Database.watchForChanges();
 
-            if (bookDao.getAllBooks().isEmpty()) {
+            if (!bookDao.hasBooks()) {
                 initializeBooks();
             }
         } catch (SQLException e) {
@@ -38,16 +62,29 @@ public class Model {
         }
     }
 
+    // Loads what the first screens read, so the catalog cache and the top-sellers ranking are ready
+    // before they are needed; runs in the background after setup and never holds up the login screen
+    public void warmUp() {
+        try {
+            bookDao.getAllBooks();
+            topSellers.getTopSellers();
+        } catch (SQLException e) {
+            e.printStackTrace(); // Only a missed head start; the screens load the data themselves
+        }
+    }
+
     private void initializeBooks() throws SQLException {
-        bookDao.createBook(new Book("Absolute Java", "Savitch", 10, 50, 142));
-        bookDao.createBook(new Book("JAVA: How to Program", "Deitel and Deitel", 100, 70, 475));
-        bookDao.createBook(new Book("Computing Concepts with JAVA 8 Essentials", "Horstman", 500, 89, 60));
-        bookDao.createBook(new Book("Java Software Solutions", "Lewis and Loftus", 500, 99, 12));
-        bookDao.createBook(new Book("Java Program Design", "Cohoon and Davidson", 2, 29, 86));
-        bookDao.createBook(new Book("Clean Code", "Robert Martin", 100, 45, 300));
-        bookDao.createBook(new Book("Gray Hat C#", "Brandon Perry", 300, 68, 178));
-        bookDao.createBook(new Book("Python Basics", "David Amos", 1000, 49, 79));
-        bookDao.createBook(new Book("Bayesian Statistics The Fun Way", "Will Kurt", 600, 42, 155));
+        // The starter catalog goes in as one batched transaction
+        bookDao.createBooks(List.of(
+                new Book("Absolute Java", "Savitch", 10, 50, 142),
+                new Book("JAVA: How to Program", "Deitel and Deitel", 100, 70, 475),
+                new Book("Computing Concepts with JAVA 8 Essentials", "Horstman", 500, 89, 60),
+                new Book("Java Software Solutions", "Lewis and Loftus", 500, 99, 12),
+                new Book("Java Program Design", "Cohoon and Davidson", 2, 29, 86),
+                new Book("Clean Code", "Robert Martin", 100, 45, 300),
+                new Book("Gray Hat C#", "Brandon Perry", 300, 68, 178),
+                new Book("Python Basics", "David Amos", 1000, 49, 79),
+                new Book("Bayesian Statistics The Fun Way", "Will Kurt", 600, 42, 155)));
     }
 
     public UserDao getUserDao() {
@@ -61,6 +98,14 @@ public class Model {
     public OrderDao getOrderDao() {
         return orderDao;
     }
+
+    public TopSellers getTopSellers() {
+        return topSellers;
+    }
+
+    public DataService getDataService() {
+        return dataService;
+    }
     
     public Optional<User> getCurrentUser() {
         return Optional.ofNullable(this.currentUser);
@@ -68,11 +113,67 @@ public class Model {
     
     public void setCurrentUser(User user) {
         this.currentUser = user;
+        clearPendingOrder(); // A new session starts with a fresh lookup
+    }
+
+    // Returns the cached pending order of the user, calling the loader only on the first request
+    // of the session (or after a failed load); the Order is null when the user has no cart yet
+    public synchronized CompletableFuture<Order> getPendingOrder(String username, Supplier<CompletableFuture<Order>> loader) {
+        if (pendingOrder == null || !username.equals(pendingOrderUser) || pendingOrder.isCompletedExceptionally()) {
+            pendingOrderUser = username;
+            pendingOrder = loader.get();
+        }
+        return pendingOrder;
+    }
+
+    // Replaces the cached pending order, e.g. with null after checkout
+    public synchronized void setPendingOrder(String username, Order order) {
+        pendingOrderUser = username;
+        pendingOrder = CompletableFuture.completedFuture(order);
+    }
+
+    // Returns the loaded pending order, first caching an empty one when the user has none
+    public synchronized Order getOrCreatePendingOrder(String username) {
+        Order order = null;
+        if (pendingOrder != null && username.equals(pendingOrderUser) && pendingOrder.isDone() && !pendingOrder.isCompletedExceptionally()) {
+            order = pendingOrder.join();
+        }
+        if (order == null) {
+            order = new Order(username, 0.0, "pending", null, new ArrayList<>());
+            setPendingOrder(username, order);
+        }
+        return order;
+    }
+
+    public synchronized void clearPendingOrder() {
+        pendingOrderUser = null;
+        pendingOrder = null;
+    }
+
+    // Forgets the cached pending order if it is this one, e.g. after it was found already checked out,
+    // so the next add to the cart looks the cart up again rather than writing into a closed order
+    public synchronized void dropPendingOrder(Order order) {
+        if (pendingOrder != null && pendingOrder.isDone() && !pendingOrder.isCompletedExceptionally()
+                && pendingOrder.join() == order) {
+            clearPendingOrder();
+        }
+    }
+
+    // The cached cart was changed by another instance, e.g. the customer checked out at another
+    // till, so the next read loads it again. Changes made here already went through the cached Order.
+    @Override
+    public synchronized void orderChanged(int orderId, boolean fromOtherInstance) {
+        if (fromOtherInstance && pendingOrder != null && pendingOrder.isDone() && !pendingOrder.isCompletedExceptionally()) {
+            Order order = pendingOrder.join();
+            if (order != null && order.getOrderId() == orderId) {
+                clearPendingOrder();
+            }
+        }
     }
 
     public void createOrder(double finalPrice, List<OrderDetail> orderDetails) throws SQLException {
         if (currentUser != null) {
-            orderDao.createOrder(new Order(currentUser.getUsername(), finalPrice, "Pending", null, orderDetails));
+            orderDao.createOrder(new Order(currentUser.getUsername(), finalPrice, "pending", null, orderDetails));
         } else {
             throw new IllegalStateException("No user is logged in.");
         }
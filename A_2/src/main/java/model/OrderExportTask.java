@@ -0,0 +1,66 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import dao.OrderDao;
+import javafx.concurrent.Task;
+
+// Background task that streams completed orders straight from the database into a CSV file.
+// A null username exports every customer's orders and adds a Username column.
+public class OrderExportTask extends Task<Integer> {
+    private static final int PROGRESS_INTERVAL = 500; // Rows between progress updates
+
+    private final OrderDao orderDao;
+    private final File file;
+    private final String username;
+
+    public OrderExportTask(OrderDao orderDao, File file, String username) {
+        this.orderDao = orderDao;
+        this.file = file;
+        this.username = username;
+    }
+
+    @Override
+    protected Integer call() throws Exception {
+        boolean allUsers = username == null;
+        int total = orderDao.countCompletedOrderLines(username);
+        int[] written = { 0 };
+        updateProgress(0, total);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            // Write the CSV header
+            writer.write((allUsers ? "Username," : "") + "Order ID,Date and Time,Final Price,Status,Book Title,Author,Quantity,Subtotal\n");
+
+            orderDao.streamCompletedOrderLines(username, line -> {
+                if (allUsers) {
+                    writer.write(line.getUsername() + ",");
+                }
+                writer.write(line.getOrderId() + "," +
+                             line.getOrderDatetime() + "," +
+                             line.getFinalPrice() + "," +
+                             line.getStatus() + "," +
+                             line.getTitle() + "," +
+                             line.getAuthors() + "," +
+                             line.getQuantity() + "," +
+                             line.getSubtotal() + "\n");
+
+                written[0]++;
+                if (written[0] % PROGRESS_INTERVAL == 0) {
+                    if (isCancelled()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                    updateProgress(written[0], total);
+                    updateMessage("Exported " + written[0] + " of " + total + " lines");
+                }
+            });
+        }
+
+        updateProgress(total, total);
+        updateMessage("Exported " + written[0] + " lines");
+        return written[0];
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+import java.sql.Timestamp;
+
+// One flattened row of a completed order: the order header, one detail line and its book
+public class OrderLine {
+    private final String username;
+    private final int orderId;
+    private final Timestamp orderDatetime;
+    private final double finalPrice;
+    private final String status;
+    private final String title;
+    private final String authors;
+    private final int quantity;
+    private final double subtotal;
+
+    public OrderLine(String username, int orderId, Timestamp orderDatetime, double finalPrice, String status,
+                     String title, String authors, int quantity, double subtotal) {
+        this.username = username;
+        this.orderId = orderId;
+        this.orderDatetime = orderDatetime;
+        this.finalPrice = finalPrice;
+        this.status = status;
+        this.title = title;
+        this.authors = authors;
+        this.quantity = quantity;
+        this.subtotal = subtotal;
+    }
+
+    public String getUsername() { return username; }
+    public int getOrderId() { return orderId; }
+    public Timestamp getOrderDatetime() { return orderDatetime; }
+    public double getFinalPrice() { return finalPrice; }
+    public String getStatus() { return status; }
+    public String getTitle() { return title; }
+    public String getAuthors() { return authors; }
+    public int getQuantity() { return quantity; }
+    public double getSubtotal() { return subtotal; }
+}
@@ -0,0 +1,180 @@
+package model;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Compact, column-oriented copy of completed orders for reporting.
+// Each order and each order line is a row index into parallel primitive arrays rather than an
+// object, and money is held as long cents, so a year of lines costs a few dozen bytes each.
+// The lines of an order are contiguous, and the orders of one user are contiguous, in the
+// order they were added. toOrder() and getOrderDetail() adapt rows back to the usual model
+// objects for code that needs them. Filled by one thread, then read-only.
+public class OrderLineStore {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long NO_DATETIME = Long.MIN_VALUE;
+
+    // Order columns
+    private int orderCount;
+    private int[] orderIds = new int[INITIAL_CAPACITY];
+    private String[] usernames = new String[INITIAL_CAPACITY];
+    private String[] statuses = new String[INITIAL_CAPACITY];
+    private long[] datetimeMillis = new long[INITIAL_CAPACITY];
+    private long[] finalPriceCents = new long[INITIAL_CAPACITY];
+    private int[] firstLines = new int[INITIAL_CAPACITY];
+
+    // Line columns
+    private int lineCount;
+    private int[] lineOrderIds = new int[INITIAL_CAPACITY];
+    private int[] bookIds = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private long[] totalPriceCents = new long[INITIAL_CAPACITY];
+
+    // First and end order index per user; also shares one String per distinct username and status
+    private final Map<String, int[]> ordersByUser = new HashMap<>();
+    private final Map<String, String> statusValues = new HashMap<>();
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double fromCents(long cents) {
+        return cents / 100.0;
+    }
+
+    // Starts a new order; the lines added next belong to it
+    public void addOrder(int orderId, String username, String status, Timestamp orderDatetime, double finalPrice) {
+        if (orderCount == orderIds.length) {
+            int capacity = grow(orderCount);
+            orderIds = Arrays.copyOf(orderIds, capacity);
+            usernames = Arrays.copyOf(usernames, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            datetimeMillis = Arrays.copyOf(datetimeMillis, capacity);
+            finalPriceCents = Arrays.copyOf(finalPriceCents, capacity);
+            firstLines = Arrays.copyOf(firstLines, capacity);
+        }
+
+        int[] range = ordersByUser.get(username);
+        if (range == null) {
+            range = new int[] { orderCount, orderCount };
+            ordersByUser.put(username, range);
+        } else if (range[1] != orderCount) {
+            throw new IllegalStateException("Orders of " + username + " must be added together");
+        } else {
+            username = usernames[range[0]];
+        }
+        range[1] = orderCount + 1;
+
+        orderIds[orderCount] = orderId;
+        usernames[orderCount] = username;
+        statuses[orderCount] = statusValues.computeIfAbsent(status, key -> key);
+        datetimeMillis[orderCount] = orderDatetime == null ? NO_DATETIME : orderDatetime.getTime();
+        finalPriceCents[orderCount] = toCents(finalPrice);
+        firstLines[orderCount] = lineCount;
+        orderCount++;
+    }
+
+    // Adds a line to the most recently added order
+    public void addLine(int bookId, int quantity, double totalPrice) {
+        if (orderCount == 0) {
+            throw new IllegalStateException("addOrder must be called before addLine");
+        }
+        if (lineCount == bookIds.length) {
+            int capacity = grow(lineCount);
+            lineOrderIds = Arrays.copyOf(lineOrderIds, capacity);
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            totalPriceCents = Arrays.copyOf(totalPriceCents, capacity);
+        }
+        lineOrderIds[lineCount] = orderIds[orderCount - 1];
+        bookIds[lineCount] = bookId;
+        quantities[lineCount] = quantity;
+        totalPriceCents[lineCount] = toCents(totalPrice);
+        lineCount++;
+    }
+
+    private static int grow(int size) {
+        return size + Math.max(INITIAL_CAPACITY, size >> 1);
+    }
+
+    public int getOrderCount() { return orderCount; }
+    public int getLineCount() { return lineCount; }
+
+    // Order accessors, by order index
+    public int getOrderId(int order) { return orderIds[order]; }
+    public String getUsername(int order) { return usernames[order]; }
+    public String getStatus(int order) { return statuses[order]; }
+    public long getFinalPriceCents(int order) { return finalPriceCents[order]; }
+    public double getFinalPrice(int order) { return fromCents(finalPriceCents[order]); }
+    public int getFirstLine(int order) { return firstLines[order]; }
+    public int getEndLine(int order) { return order + 1 < orderCount ? firstLines[order + 1] : lineCount; }
+
+    public Timestamp getOrderDatetime(int order) {
+        return datetimeMillis[order] == NO_DATETIME ? null : new Timestamp(datetimeMillis[order]);
+    }
+
+    // Line accessors, by line index
+    public int getLineOrderId(int line) { return lineOrderIds[line]; }
+    public int getBookId(int line) { return bookIds[line]; }
+    public int getQuantity(int line) { return quantities[line]; }
+    public long getTotalPriceCents(int line) { return totalPriceCents[line]; }
+    public double getTotalPrice(int line) { return fromCents(totalPriceCents[line]); }
+
+    // The user's orders are the indexes from getFirstOrder(username) up to getEndOrder(username)
+    public int getFirstOrder(String username) {
+        int[] range = ordersByUser.get(username);
+        return range == null ? 0 : range[0];
+    }
+
+    public int getEndOrder(String username) {
+        int[] range = ordersByUser.get(username);
+        return range == null ? 0 : range[1];
+    }
+
+    public Set<Integer> getDistinctBookIds() {
+        Set<Integer> ids = new HashSet<>();
+        for (int line = 0; line < lineCount; line++) {
+            ids.add(bookIds[line]);
+        }
+        return ids;
+    }
+
+    // Adapters back to the model objects used by the rest of the UI
+    public OrderDetail getOrderDetail(int line) {
+        return new OrderDetail(lineOrderIds[line], bookIds[line], quantities[line], getTotalPrice(line));
+    }
+
+    public List<OrderDetail> getOrderDetails(int order) {
+        int end = getEndLine(order);
+        List<OrderDetail> details = new ArrayList<>(end - firstLines[order]);
+        for (int line = firstLines[order]; line < end; line++) {
+            details.add(getOrderDetail(line));
+        }
+        return details;
+    }
+
+    public Order toOrder(int order) {
+        Order result = new Order(usernames[order], getFinalPrice(order), statuses[order], getOrderDatetime(order), getOrderDetails(order));
+        result.setOrderId(orderIds[order]);
+        return result;
+    }
+
+    // Releases the spare capacity left by growing, once loading is finished
+    public void trimToSize() {
+        orderIds = Arrays.copyOf(orderIds, orderCount);
+        usernames = Arrays.copyOf(usernames, orderCount);
+        statuses = Arrays.copyOf(statuses, orderCount);
+        datetimeMillis = Arrays.copyOf(datetimeMillis, orderCount);
+        finalPriceCents = Arrays.copyOf(finalPriceCents, orderCount);
+        firstLines = Arrays.copyOf(firstLines, orderCount);
+        lineOrderIds = Arrays.copyOf(lineOrderIds, lineCount);
+        bookIds = Arrays.copyOf(bookIds, lineCount);
+        quantities = Arrays.copyOf(quantities, lineCount);
+        totalPriceCents = Arrays.copyOf(totalPriceCents, lineCount);
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Records when each startup phase begins and ends, relative to JVM start, on whichever thread runs it.
+// Phases on different threads overlap, which is the point of the startup pipeline; the report shows
+// them side by side together with milestones such as the login screen appearing.
+public class StartupTimer {
+    private static final Path REPORT_FILE = Paths.get(System.getProperty("startup.report", "startup-report.txt"));
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final List<Phase> phases = new ArrayList<>();
+    private final List<String> milestones = new ArrayList<>();
+
+    public class Phase {
+        private final String name;
+        private final String thread;
+        private final long startMillis;
+        private long endMillis = -1;
+
+        private Phase(String name) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.startMillis = sinceJvmStart();
+        }
+
+        // Phases end on background threads; writeReport() reads endMillis under the same lock
+        public void end() {
+            synchronized (StartupTimer.this) {
+                endMillis = sinceJvmStart();
+            }
+        }
+    }
+
+    public synchronized Phase begin(String name) {
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        return phase;
+    }
+
+    public synchronized void mark(String milestone) {
+        milestones.add(String.format("%-32s at %6d ms", milestone, sinceJvmStart()));
+    }
+
+    private long sinceJvmStart() {
+        return System.currentTimeMillis() - jvmStartMillis;
+    }
+
+    // Prints the report and writes it to startup-report.txt (override with -Dstartup.report)
+    public synchronized void writeReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Startup phases (milliseconds since JVM start)");
+        lines.add(String.format("%-32s %-20s %8s %8s %8s", "Phase", "Thread", "Start", "End", "Took"));
+        for (Phase phase : phases) {
+            lines.add(phase.endMillis < 0
+                    ? String.format("%-32s %-20s %8d %8s %8s", phase.name, phase.thread, phase.startMillis, "-", "-")
+                    : String.format("%-32s %-20s %8d %8d %8d", phase.name, phase.thread, phase.startMillis,
+                            phase.endMillis, phase.endMillis - phase.startMillis));
+        }
+        lines.addAll(milestones);
+
+        lines.forEach(System.out::println);
+        try {
+            Files.write(REPORT_FILE, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+// A relative change to one book's copy counts. Applied as "column + delta" in the database,
+// so changes made at the same time by checkouts, restocks and admin edits all add up
+// instead of the last writer's absolute numbers winning.
+public class StockChange {
+    private final int bookId;
+    private final int physicalDelta;
+    private final int soldDelta;
+
+    public StockChange(int bookId, int physicalDelta, int soldDelta) {
+        this.bookId = bookId;
+        this.physicalDelta = physicalDelta;
+        this.soldDelta = soldDelta;
+    }
+
+    // New copies arrive on the shelf
+    public static StockChange restock(int bookId, int copies) {
+        return new StockChange(bookId, copies, 0);
+    }
+
+    // Copies leave the shelf and count as sold
+    public static StockChange sell(int bookId, int copies) {
+        return new StockChange(bookId, -copies, copies);
+    }
+
+    public int getBookId() { return bookId; }
+    public int getPhysicalDelta() { return physicalDelta; }
+    public int getSoldDelta() { return soldDelta; }
+
+    public boolean isEmpty() {
+        return physicalDelta == 0 && soldDelta == 0;
+    }
+}
@@ -0,0 +1,202 @@
+package model;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import dao.BookChangeListener;
+import dao.BookDao;
+import dao.ChangeNotifier;
+import dao.OrderDao;
+import dao.SalesListener;
+
+// In-memory bestseller ranking, kept up to date from DAO change and sales events instead of
+// sorting the books table on every home page load.
+// The all-time ranking is ordered by sold_copies; windowed rankings ("last 7 days") are built
+// from per-day sales buckets loaded once from completed orders and then extended at each checkout.
+public final class TopSellers implements BookChangeListener, SalesListener {
+    // Highest sold_copies first, ties broken by book id like BookDao.getTopFiveBooks
+    private static final Comparator<Book> BY_SALES =
+            Comparator.comparingInt(Book::getSoldCopies).reversed().thenComparingInt(Book::getId);
+
+    private final BookDao bookDao;
+    private final OrderDao orderDao;
+    private final int size;
+    private final int maxWindowDays;
+
+    private final TreeSet<Book> ranking = new TreeSet<>(BY_SALES);
+    private final Map<Integer, Book> rankedById = new HashMap<>();
+    private final Set<Integer> dirty = new HashSet<>();
+    private final TreeMap<LocalDate, Map<Integer, Integer>> dailySales = new TreeMap<>();
+    private final Map<Integer, List<Integer>> windowCache = new HashMap<>(); // Window days -> ranked book ids
+    private LocalDate windowCacheDate;
+    private boolean loaded;
+
+    public TopSellers(BookDao bookDao, OrderDao orderDao, int size, int maxWindowDays) {
+        this.bookDao = bookDao;
+        this.orderDao = orderDao;
+        this.size = size;
+        this.maxWindowDays = maxWindowDays;
+        ChangeNotifier.addBookListener(this);
+        ChangeNotifier.addSalesListener(this);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // The configured number of all-time bestsellers
+    public List<Book> getTopSellers() throws SQLException {
+        return getTopSellers(size);
+    }
+
+    public synchronized List<Book> getTopSellers(int n) throws SQLException {
+        load();
+        refreshDirty();
+        List<Book> top = new ArrayList<>(n);
+        for (Book book : ranking) {
+            if (top.size() == n) {
+                break;
+            }
+            top.add(new Book(book));
+        }
+        return top;
+    }
+
+    // Bestsellers by quantity sold in completed orders over the last given number of days, today included
+    public List<Book> getTopSellers(int n, int days) throws SQLException {
+        if (days < 1 || days > maxWindowDays) {
+            throw new IllegalArgumentException("Window must be between 1 and " + maxWindowDays + " days");
+        }
+
+        List<Integer> rankedIds;
+        synchronized (this) {
+            load();
+            if (!LocalDate.now().equals(windowCacheDate)) {
+                // Windows end today, so cached rankings expire at midnight
+                windowCache.clear();
+                windowCacheDate = LocalDate.now();
+            }
+            rankedIds = windowCache.computeIfAbsent(days, this::rankWindow);
+        }
+
+        List<Integer> ids = rankedIds.subList(0, Math.min(n, rankedIds.size()));
+        Map<Integer, Book> books = bookDao.getBooksByIds(ids);
+        List<Book> top = new ArrayList<>(ids.size());
+        for (Integer bookId : ids) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                top.add(book);
+            }
+        }
+        return top;
+    }
+
+    private List<Integer> rankWindow(int days) {
+        LocalDate since = LocalDate.now().minusDays(days - 1);
+        Map<Integer, Integer> totals = new HashMap<>();
+        for (Map<Integer, Integer> day : dailySales.tailMap(since, true).values()) {
+            day.forEach((bookId, qty) -> totals.merge(bookId, qty, Integer::sum));
+        }
+
+        List<Integer> ids = new ArrayList<>(totals.keySet());
+        ids.sort(Comparator.comparing((Integer bookId) -> totals.get(bookId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return ids;
+    }
+
+    // Builds both rankings on first use
+    private void load() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        for (Book book : bookDao.getAllBooks()) {
+            ranking.add(book);
+            rankedById.put(book.getId(), book);
+        }
+        dailySales.putAll(orderDao.getDailyBookSales(LocalDate.now().minusDays(maxWindowDays - 1)));
+        dirty.clear();
+        loaded = true;
+    }
+
+    // Re-reads only the books whose sales figures changed since the last read
+    private void refreshDirty() throws SQLException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Integer, Book> books = bookDao.getBooksByIds(dirty);
+        for (Integer bookId : dirty) {
+            Book previous = rankedById.remove(bookId);
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+            Book book = books.get(bookId);
+            if (book != null) {
+                ranking.add(book);
+                rankedById.put(bookId, book);
+            }
+        }
+        dirty.clear();
+    }
+
+    // Drops both rankings; the next read rebuilds them from the database
+    public synchronized void invalidateAll() {
+        ranking.clear();
+        rankedById.clear();
+        dirty.clear();
+        dailySales.clear();
+        windowCache.clear();
+        loaded = false;
+    }
+
+    @Override
+    public synchronized void bookChanged(int bookId) {
+        if (loaded) {
+            dirty.add(bookId);
+        }
+    }
+
+    @Override
+    public synchronized void bookRemoved(int bookId) {
+        dirty.remove(bookId);
+        Book previous = rankedById.remove(bookId);
+        if (previous != null) {
+            ranking.remove(previous);
+        }
+        for (Map<Integer, Integer> day : dailySales.values()) {
+            day.remove(bookId);
+        }
+        windowCache.clear();
+    }
+
+    // Imported books may arrive with sold copies, so the ranking is rebuilt on the next request
+    @Override
+    public void catalogChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public synchronized void booksSold(Map<Integer, Integer> quantities, Timestamp orderDatetime) {
+        if (!loaded) {
+            return;
+        }
+        LocalDate day = orderDatetime == null ? LocalDate.now()
+                : orderDatetime.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        Map<Integer, Integer> sales = dailySales.computeIfAbsent(day, key -> new HashMap<>());
+        quantities.forEach((bookId, qty) -> sales.merge(bookId, qty, Integer::sum));
+
+        // Buckets older than the widest window are no longer needed
+        dailySales.headMap(LocalDate.now().minusDays(maxWindowDays - 1)).clear();
+        windowCache.clear();
+    }
+}
@@ -5,17 +5,20 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import dao.UserDaoImpl;
-import java.sql.SQLException;
-import java.util.List;
 
-public class UserTableModel {
+import dao.ChangeNotifier;
+import dao.UserChangeListener;
+
+// Backs the admin user grid. Once loaded, it reloads whenever a user is created or updated,
+// here or by another instance of the application.
+public final class UserTableModel implements UserChangeListener {
     private ObservableList<User> users;
-    private UserDaoImpl userDao;
+    private DataService dataService;
 
-    public UserTableModel() {
+    public UserTableModel(Model model) {
         users = FXCollections.observableArrayList();
-        userDao = new UserDaoImpl();
+        dataService = model.getDataService();
+        ChangeNotifier.addUserListener(this);
     }
 
     public ObservableList<User> getUsers() {
@@ -23,11 +26,7 @@ public class UserTableModel {
     }
 
     public void updateUser(User user) {
-        try {
-            userDao.updateUser(user);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        DataService.onFxThread(dataService.updateUser(user), ignored -> {}, Throwable::printStackTrace);
     }
 
     public void clearUsers() {
@@ -35,12 +34,22 @@ public class UserTableModel {
     }
 
     public void loadUsersFromDatabase() {
-        try {
-            List<User> userList = userDao.getAllUsers();
-            users.setAll(userList);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        DataService.onFxThread(dataService.getAllUsers(), users::setAll, Throwable::printStackTrace);
+    }
+
+    // The list is small, so a change reloads it rather than patching one row
+    @Override
+    public void userChanged(String username) {
+        DataService.FX_THREAD.execute(() -> {
+            if (!users.isEmpty()) {
+                loadUsersFromDatabase();
+            }
+        });
+    }
+
+    // Stops listening for DAO events, e.g. when the user logs out
+    public void close() {
+        ChangeNotifier.removeUserListener(this);
     }
 
     @SuppressWarnings("unchecked")